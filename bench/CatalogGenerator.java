@@ -0,0 +1,195 @@
+/**
+ * Writes synthetic manifests in the "name, dir, date" format read by
+ * FileSystem(String). Name popularity follows a Zipf distribution, directories form a
+ * tree with a configurable depth and fan-out, and dates are spread uniformly over a
+ * configurable number of days. Every line is a different file: the directories of a
+ * name are drawn from the tree without replacement, and once a name is in every
+ * directory of the tree its next files go to new leaf directories, so a manifest of n
+ * lines loads n files
+ *
+ * Usage: java CatalogGenerator output lines [--names n] [--zipf s] [--depth d]
+ * [--fanout f] [--days n] [--seed n]
+ */
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CatalogGenerator {
+   public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+         .ofPattern("MM/dd/yyyy");
+   public static final LocalDate FIRST_DATE = LocalDate.of(2021, 1, 1);
+
+   private int names = 100000;
+   private double zipf = 1.0;
+   private int depth = 4;
+   private int fanout = 10;
+   private int days = 365;
+   private long seed = 42;
+
+   private double[] cumulative;
+   private String[] dates;
+   private Random random;
+   // number of files written for each name
+   private int[] occurrences;
+   // number of directories of the tree, and the step of the walk through them, which
+   // has no common factor with it so a name visits every directory once
+   private long directories;
+   private long step;
+
+   /**
+    * Builds the name distribution and the date strings from the current settings
+    */
+   private void prepare() {
+      this.random = new Random(this.seed);
+
+      // cumulative Zipf weights, rank r has weight 1 / r^s
+      this.cumulative = new double[this.names];
+      double total = 0;
+      for (int r = 0; r < this.names; r++) {
+         total += 1 / Math.pow(r + 1, this.zipf);
+         this.cumulative[r] = total;
+      }
+      for (int r = 0; r < this.names; r++) {
+         this.cumulative[r] /= total;
+      }
+
+      this.dates = new String[this.days];
+      for (int d = 0; d < this.days; d++) {
+         this.dates[d] = FIRST_DATE.plusDays(d).format(DATE_FORMAT);
+      }
+
+      if (this.depth <= 0 || this.fanout <= 0) {
+         throw new IllegalArgumentException("Depth and fan-out must be positive");
+      }
+      this.occurrences = new int[this.names];
+      this.directories = 0;
+      long level = 1;
+      for (int l = 1; l <= this.depth; l++) {
+         level *= this.fanout;
+         this.directories += level;
+         if (this.directories > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The directory tree is too large");
+         }
+      }
+      this.step = Math.max(1, (long) (this.directories * 0.618) | 1);
+      while (gcd(this.step, this.directories) != 1) {
+         this.step += 2;
+      }
+   }
+
+   private static long gcd(long a, long b) {
+      return b == 0 ? a : gcd(b, a % b);
+   }
+
+   /**
+    * Returns the next line of the manifest
+    *
+    * @return a "name, dir, date" line
+    */
+   String nextLine() {
+      int rank = Arrays.binarySearch(this.cumulative, this.random.nextDouble());
+      if (rank < 0) {
+         rank = Math.min(-rank - 1, this.names - 1);
+      }
+
+      StringBuilder sb = new StringBuilder(64);
+      sb.append("file").append(rank).append(".txt, ");
+
+      // each name walks the tree from its own start, round k adds a leaf /u<k>
+      long occurrence = this.occurrences[rank]++;
+      long start = (rank + this.seed) * 0x9E3779B97F4A7C15L;
+      start = Math.floorMod(start ^ start >>> 32, this.directories);
+      long index = (occurrence % this.directories * this.step + start) % this.directories;
+      this.appendDirectory(sb, index);
+      if (occurrence >= this.directories) {
+         sb.append("/u").append(occurrence / this.directories);
+      }
+
+      sb.append(", ").append(this.dates[this.random.nextInt(this.days)]);
+      return sb.toString();
+   }
+
+   /**
+    * Appends the path of a directory of the tree. Directories are numbered level by
+    * level, the fanout directories of the first level first
+    *
+    * @param sb    The line
+    * @param index The number of the directory
+    */
+   private void appendDirectory(StringBuilder sb, long index) {
+      // count is the number of directories of the level, fanout^levels
+      int levels = 1;
+      long count = this.fanout;
+      while (index >= count) {
+         index -= count;
+         count *= this.fanout;
+         levels++;
+      }
+
+      long unit = count / this.fanout;
+      for (int l = 0; l < levels; l++) {
+         sb.append("/d").append(index / unit % this.fanout);
+         unit /= this.fanout;
+      }
+   }
+
+   /**
+    * Writes a manifest
+    *
+    * @param output The path of the manifest
+    * @param lines  The number of lines to write
+    * @throws IOException if the manifest cannot be written
+    */
+   public void write(String output, long lines) throws IOException {
+      this.prepare();
+
+      try (BufferedWriter out = new BufferedWriter(new FileWriter(output), 1 << 16)) {
+         for (long i = 0; i < lines; i++) {
+            out.write(this.nextLine());
+            out.newLine();
+         }
+      }
+   }
+
+   public static void main(String[] args) throws IOException {
+      if (args.length < 2) {
+         System.out.println("Usage: java CatalogGenerator output lines [--names n] "
+               + "[--zipf s] [--depth d] [--fanout f] [--days n] [--seed n]");
+         return;
+      }
+
+      CatalogGenerator generator = new CatalogGenerator();
+      for (int i = 2; i + 1 < args.length; i += 2) {
+         String value = args[i + 1];
+         switch (args[i]) {
+         case "--names":
+            generator.names = Integer.parseInt(value);
+            break;
+         case "--zipf":
+            generator.zipf = Double.parseDouble(value);
+            break;
+         case "--depth":
+            generator.depth = Integer.parseInt(value);
+            break;
+         case "--fanout":
+            generator.fanout = Integer.parseInt(value);
+            break;
+         case "--days":
+            generator.days = Integer.parseInt(value);
+            break;
+         case "--seed":
+            generator.seed = Long.parseLong(value);
+            break;
+         default:
+            throw new IllegalArgumentException("Unknown option " + args[i]);
+         }
+      }
+
+      generator.write(args[0], Long.parseLong(args[1]));
+   }
+}
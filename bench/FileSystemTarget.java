@@ -0,0 +1,54 @@
+/**
+ * Adapter that exposes FileSystem to the benchmarks in the benchmark package
+ */
+
+import java.util.List;
+
+import benchmark.Targets;
+
+public class FileSystemTarget implements Targets.CatalogTarget {
+
+   private FileSystem fs = new FileSystem();
+
+   @Override
+   public boolean add(String name, String directory, String modifiedDate) {
+      return this.fs.add(name, directory, modifiedDate);
+   }
+
+   @Override
+   public Object findFile(String name, String directory) {
+      return this.fs.findFile(name, directory);
+   }
+
+   @Override
+   public List<?> findFilesByName(String name) {
+      return this.fs.findFilesByName(name);
+   }
+
+   @Override
+   public List<?> findFilesInMultDir(String modifiedDate) {
+      return this.fs.findFilesInMultDir(modifiedDate);
+   }
+
+   @Override
+   public boolean removeFile(String name, String directory) {
+      return this.fs.removeFile(name, directory);
+   }
+
+   @Override
+   public int addRemoveBatch(String[] names, String[] directories,
+         String[] modifiedDates) {
+      Batch adds = new Batch();
+      Batch removes = new Batch();
+      for (int i = 0; i < names.length; i++) {
+         adds.add(names[i], directories[i], modifiedDates[i]);
+         removes.remove(names[i], directories[i]);
+      }
+      return this.fs.apply(adds) + this.fs.apply(removes);
+   }
+
+   @Override
+   public void load(String inputFile) {
+      this.fs = new FileSystem(inputFile);
+   }
+}
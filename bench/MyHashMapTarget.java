@@ -0,0 +1,25 @@
+/**
+ * Adapter that exposes MyHashMap to the benchmarks in the benchmark package
+ */
+
+import benchmark.Targets;
+
+public class MyHashMapTarget implements Targets.MapTarget {
+
+   private MyHashMap<String, Integer> map = new MyHashMap<String, Integer>();
+
+   @Override
+   public boolean put(String key, Integer value) {
+      return this.map.put(key, value);
+   }
+
+   @Override
+   public Integer get(String key) {
+      return this.map.get(key);
+   }
+
+   @Override
+   public boolean remove(String key) {
+      return this.map.remove(key);
+   }
+}
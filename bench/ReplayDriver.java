@@ -0,0 +1,178 @@
+/**
+ * Replays a mix of add, find and remove operations against a FileSystem loaded from a
+ * manifest, from several threads, and reports the sustained throughput and the latency
+ * percentiles of each operation
+ *
+ * Usage: java ReplayDriver manifest threads seconds [--mix add:find:remove]
+ * [--warmup seconds] [--sample lines] [--seed n]
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ReplayDriver {
+
+   private int addPercent = 10;
+   private int findPercent = 80;
+   private int warmupSeconds = 5;
+   private int sample = 1000000;
+   private long seed = 42;
+
+   private FileSystem fs;
+   private ArrayList<String[]> records;
+
+   private LatencyHistogram addLatency = new LatencyHistogram();
+   private LatencyHistogram findLatency = new LatencyHistogram();
+   private LatencyHistogram findByNameLatency = new LatencyHistogram();
+   private LatencyHistogram removeLatency = new LatencyHistogram();
+   private LongAdder operations = new LongAdder();
+
+   /**
+    * Loads the manifest into the file system and keeps its first lines as the keys of
+    * the find operations
+    *
+    * @param manifest The path of the manifest
+    * @throws IOException if the manifest cannot be read
+    */
+   private void load(String manifest) throws IOException {
+      long start = System.nanoTime();
+      this.fs = new FileSystem(manifest);
+      System.out.printf("loaded %s in %.1f s%n", manifest,
+            (System.nanoTime() - start) / 1e9);
+
+      this.records = new ArrayList<String[]>();
+      try (BufferedReader in = new BufferedReader(new FileReader(manifest))) {
+         String line;
+         while (this.records.size() < this.sample && (line = in.readLine()) != null) {
+            this.records.add(line.split(", "));
+         }
+      }
+      if (this.records.isEmpty()) {
+         throw new IllegalArgumentException("Manifest " + manifest + " is empty");
+      }
+   }
+
+   /**
+    * Runs the operations of one thread until the deadline. Operations are only
+    * recorded after the warmup deadline
+    *
+    * @param id       The index of the thread, used to keep added files apart
+    * @param warmup   The time when recording starts, in System.nanoTime units
+    * @param deadline The time when the thread stops, in System.nanoTime units
+    */
+   private void replay(int id, long warmup, long deadline) {
+      Random random = new Random(this.seed + id);
+      ArrayDeque<String[]> added = new ArrayDeque<String[]>();
+      long counter = 0;
+      long now = System.nanoTime();
+
+      while (now < deadline) {
+         int roll = random.nextInt(100);
+         String[] record = this.records.get(random.nextInt(this.records.size()));
+         LatencyHistogram histogram;
+         long start = System.nanoTime();
+
+         if (roll < this.addPercent) {
+            String dir = "/replay/t" + id + "/" + counter++;
+            this.fs.add(record[0], dir, record[2]);
+            added.add(new String[] { record[0], dir });
+            histogram = this.addLatency;
+         }
+         else if (roll >= this.addPercent + this.findPercent && !added.isEmpty()) {
+            String[] file = added.poll();
+            this.fs.removeFile(file[0], file[1]);
+            histogram = this.removeLatency;
+         }
+         else if ((roll & 1) == 0) {
+            this.fs.findFile(record[0], record[1]);
+            histogram = this.findLatency;
+         }
+         else {
+            this.fs.findFilesByName(record[0]);
+            histogram = this.findByNameLatency;
+         }
+
+         now = System.nanoTime();
+         if (start >= warmup) {
+            histogram.record(now - start);
+            this.operations.increment();
+         }
+      }
+   }
+
+   /**
+    * Runs the replay from several threads and prints the results
+    *
+    * @param threads The number of threads
+    * @param seconds The measured duration, after the warmup
+    * @throws InterruptedException if interrupted while waiting for the threads
+    */
+   private void run(int threads, int seconds) throws InterruptedException {
+      long warmup = System.nanoTime() + this.warmupSeconds * 1000000000L;
+      long deadline = warmup + seconds * 1000000000L;
+      CountDownLatch done = new CountDownLatch(threads);
+
+      for (int t = 0; t < threads; t++) {
+         int id = t;
+         Thread thread = new Thread(() -> {
+            try {
+               this.replay(id, warmup, deadline);
+            }
+            finally {
+               done.countDown();
+            }
+         }, "replay-" + t);
+         thread.start();
+      }
+      done.await();
+
+      System.out.printf("threads: %d, throughput: %.0f ops/s%n", threads,
+            this.operations.sum() / (double) seconds);
+      System.out.println("add: " + this.addLatency);
+      System.out.println("findFile: " + this.findLatency);
+      System.out.println("findFilesByName: " + this.findByNameLatency);
+      System.out.println("removeFile: " + this.removeLatency);
+   }
+
+   public static void main(String[] args) throws IOException, InterruptedException {
+      if (args.length < 3) {
+         System.out.println("Usage: java ReplayDriver manifest threads seconds "
+               + "[--mix add:find:remove] [--warmup seconds] [--sample lines] [--seed n]");
+         return;
+      }
+
+      ReplayDriver driver = new ReplayDriver();
+      for (int i = 3; i + 1 < args.length; i += 2) {
+         String value = args[i + 1];
+         switch (args[i]) {
+         case "--mix":
+            String[] mix = value.split(":");
+            int total = Integer.parseInt(mix[0]) + Integer.parseInt(mix[1])
+                  + Integer.parseInt(mix[2]);
+            driver.addPercent = Integer.parseInt(mix[0]) * 100 / total;
+            driver.findPercent = Integer.parseInt(mix[1]) * 100 / total;
+            break;
+         case "--warmup":
+            driver.warmupSeconds = Integer.parseInt(value);
+            break;
+         case "--sample":
+            driver.sample = Integer.parseInt(value);
+            break;
+         case "--seed":
+            driver.seed = Long.parseLong(value);
+            break;
+         default:
+            throw new IllegalArgumentException("Unknown option " + args[i]);
+         }
+      }
+
+      driver.load(args[0]);
+      driver.run(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+   }
+}
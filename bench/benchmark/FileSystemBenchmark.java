@@ -0,0 +1,120 @@
+/**
+ * JMH benchmarks for the FileSystem operations and for loading a manifest file
+ */
+
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class FileSystemBenchmark {
+   // every name is stored in this many directories
+   private static final int DIRS_PER_NAME = 8;
+
+   @Param({ "1000", "100000", "1000000" })
+   public int size;
+
+   private Targets.CatalogTarget fs;
+   private File manifest;
+   private int next;
+
+   // files looked up by the find benchmarks, spread over the whole file system
+   private int[] lookups = new int[1024];
+   private String[] batchNames = new String[1024];
+   private String[] batchDirs = new String[1024];
+   private String[] batchDates = new String[1024];
+
+   @Setup(Level.Trial)
+   public void setUp() throws IOException {
+      this.fs = Targets.create("FileSystemTarget", Targets.CatalogTarget.class);
+      this.manifest = File.createTempFile("manifest", ".txt");
+
+      try (PrintWriter out = new PrintWriter(this.manifest)) {
+         for (int i = 0; i < this.size; i++) {
+            this.fs.add(name(i), dir(i), date(i));
+            out.println(name(i) + ", " + dir(i) + ", " + date(i));
+         }
+      }
+
+      for (int i = 0; i < 1024; i++) {
+         this.lookups[i] = (int) ((long) i * 7919 % this.size);
+         this.batchNames[i] = name(this.size + i);
+         this.batchDirs[i] = dir(this.size + i);
+         this.batchDates[i] = date(this.size + i);
+      }
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() {
+      this.manifest.delete();
+   }
+
+   // Adds a new file and removes it so the file system keeps its size
+   @Benchmark
+   public boolean addRemove() {
+      int i = this.size + (this.next++ & 1023);
+      this.fs.add(name(i), dir(i), date(i));
+      return this.fs.removeFile(name(i), dir(i));
+   }
+
+   // Same files as addRemove, applied as two batches of 1024 operations
+   @Benchmark
+   @OperationsPerInvocation(1024)
+   public int addRemoveBatch() {
+      return this.fs.addRemoveBatch(this.batchNames, this.batchDirs, this.batchDates);
+   }
+
+   @Benchmark
+   public Object findFile() {
+      int i = this.lookups[this.next++ & 1023];
+      return this.fs.findFile(name(i), dir(i));
+   }
+
+   @Benchmark
+   public List<?> findFilesByName() {
+      int i = this.lookups[this.next++ & 1023];
+      return this.fs.findFilesByName(name(i));
+   }
+
+   @Benchmark
+   public List<?> findFilesInMultDir() {
+      return this.fs.findFilesInMultDir(date(this.next++ & 1023));
+   }
+
+   // Loads a manifest with size lines through the FileSystem(String) constructor
+   @Benchmark
+   @BenchmarkMode(Mode.SingleShotTime)
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   @Warmup(iterations = 2)
+   @Measurement(iterations = 5)
+   public Targets.CatalogTarget loadManifest() {
+      Targets.CatalogTarget loaded = Targets.create("FileSystemTarget",
+            Targets.CatalogTarget.class);
+      loaded.load(this.manifest.getPath());
+      return loaded;
+   }
+
+   private static String name(int i) {
+      return "file" + (i / DIRS_PER_NAME) + ".txt";
+   }
+
+   private static String dir(int i) {
+      return "/home/user" + (i % DIRS_PER_NAME);
+   }
+
+   private static String date(int i) {
+      int day = i % 336;
+      return String.format("%02d/%02d/2021", day / 28 + 1, day % 28 + 1);
+   }
+}
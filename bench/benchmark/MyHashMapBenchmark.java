@@ -0,0 +1,114 @@
+/**
+ * JMH benchmarks comparing MyHashMap with java.util.HashMap for put, get and remove
+ * across map sizes and key distributions. Both maps are called through the same
+ * MapTarget interface so neither gets a cheaper call site
+ */
+
+package benchmark;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms6g", "-Xmx6g" })
+public class MyHashMapBenchmark {
+   private static final long SEED = 42;
+
+   @Param({ "1000", "100000", "10000000" })
+   public int size;
+
+   // sequential: key0, key1, ... random: random alphanumeric keys,
+   // paths: long keys sharing directory prefixes
+   @Param({ "sequential", "random", "paths" })
+   public String keys;
+
+   @Param({ "MyHashMap", "HashMap" })
+   public String impl;
+
+   private String[] present;
+   private String[] absent;
+   private int next;
+
+   private Targets.MapTarget map;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      Random random = new Random(SEED);
+
+      // 1024 lookups are cycled so the key array itself stays in cache
+      this.present = new String[1024];
+      this.absent = new String[1024];
+      String[] all = new String[this.size];
+      for (int i = 0; i < this.size; i++) {
+         all[i] = key(i, random);
+      }
+      for (int i = 0; i < this.present.length; i++) {
+         this.present[i] = all[random.nextInt(this.size)];
+         this.absent[i] = key(this.size + i, random) + "#";
+      }
+
+      this.map = this.impl.equals("MyHashMap")
+            ? Targets.create("MyHashMapTarget", Targets.MapTarget.class)
+            : new JdkMap();
+      for (int i = 0; i < all.length; i++) {
+         this.map.put(all[i], i);
+      }
+   }
+
+   @Benchmark
+   public Integer getHit() {
+      String key = this.present[this.next++ & 1023];
+      return this.map.get(key);
+   }
+
+   @Benchmark
+   public Integer getMiss() {
+      String key = this.absent[this.next++ & 1023];
+      return this.map.get(key);
+   }
+
+   // Puts a new key and removes it so the map keeps its size
+   @Benchmark
+   public boolean putRemove() {
+      String key = this.absent[this.next++ & 1023];
+      this.map.put(key, 0);
+      return this.map.remove(key);
+   }
+
+   private String key(int i, Random random) {
+      switch (this.keys) {
+      case "random":
+         return Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+      case "paths":
+         return "/home/user/projects/" + (i % 97) + "/src/" + (i % 13) + "/file" + i;
+      default:
+         return "key" + i;
+      }
+   }
+
+   private static class JdkMap implements Targets.MapTarget {
+      private HashMap<String, Integer> map = new HashMap<String, Integer>();
+
+      @Override
+      public boolean put(String key, Integer value) {
+         return this.map.putIfAbsent(key, value) == null;
+      }
+
+      @Override
+      public Integer get(String key) {
+         return this.map.get(key);
+      }
+
+      @Override
+      public boolean remove(String key) {
+         return this.map.remove(key) != null;
+      }
+   }
+}
@@ -0,0 +1,69 @@
+/**
+ * Interfaces between the benchmarks and the classes they measure. JMH needs benchmarks
+ * in a named package, while MyHashMap and FileSystem live in the default package, so
+ * adapters in the default package implement these interfaces and are loaded by name
+ */
+
+package benchmark;
+
+import java.util.List;
+
+public final class Targets {
+
+   private Targets() {
+   }
+
+   /**
+    * Map operations measured by MyHashMapBenchmark
+    */
+   public interface MapTarget {
+      boolean put(String key, Integer value);
+
+      Integer get(String key);
+
+      boolean remove(String key);
+   }
+
+   /**
+    * File system operations measured by FileSystemBenchmark
+    */
+   public interface CatalogTarget {
+      boolean add(String name, String directory, String modifiedDate);
+
+      Object findFile(String name, String directory);
+
+      List<?> findFilesByName(String name);
+
+      List<?> findFilesInMultDir(String modifiedDate);
+
+      boolean removeFile(String name, String directory);
+
+      /**
+       * Adds the files in one batch, then removes them in a second one
+       * 
+       * @return the number of files added and removed
+       */
+      int addRemoveBatch(String[] names, String[] directories, String[] modifiedDates);
+
+      /**
+       * Replaces the file system with one loaded from a manifest file
+       */
+      void load(String inputFile);
+   }
+
+   /**
+    * Creates an adapter from the default package
+    * 
+    * @param className The name of the adapter class
+    * @param type      The interface implemented by the adapter
+    * @return a new instance of the adapter
+    */
+   public static <T> T create(String className, Class<T> type) {
+      try {
+         return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+      }
+      catch (ReflectiveOperationException e) {
+         throw new IllegalStateException("Cannot create " + className, e);
+      }
+   }
+}
@@ -0,0 +1,78 @@
+/**
+ * A list of add and remove operations applied to a file system at once with
+ * FileSystem.apply. Operations take effect as if they were applied in order
+ */
+
+import java.util.ArrayList;
+
+public class Batch {
+
+   ArrayList<Operation> operations;
+
+   /**
+    * Constructs an empty batch
+    */
+   public Batch() {
+      this.operations = new ArrayList<Operation>();
+   }
+
+   /**
+    * Adds a file to the batch. Null arguments get the FileData default values
+    *
+    * @param fileName     The name of the file
+    * @param directory    The relative path of the file
+    * @param modifiedDate The last modified date
+    * @return this batch
+    */
+   public Batch add(String fileName, String directory, String modifiedDate) {
+      FileData f = new FileData(fileName, directory, modifiedDate);
+      this.operations.add(new Operation(true, f.name, f.dir, f.lastModifiedDate));
+      return this;
+   }
+
+   /**
+    * Removes a file from the batch. Operations with a null argument are ignored, as
+    * removeFile ignores them
+    *
+    * @param name      The name of the file to remove
+    * @param directory The directory of the file to remove
+    * @return this batch
+    */
+   public Batch remove(String name, String directory) {
+      if (name != null && directory != null) {
+         this.operations.add(new Operation(false, name, directory, null));
+      }
+      return this;
+   }
+
+   /**
+    * @return the number of operations in this batch
+    */
+   public int size() {
+      return this.operations.size();
+   }
+
+   /**
+    * @return true if this batch has no operations
+    */
+   public boolean isEmpty() {
+      return this.operations.isEmpty();
+   }
+
+   /**
+    * An add or remove operation of a batch
+    */
+   static class Operation {
+      boolean add;
+      String name;
+      String dir;
+      String date;
+
+      private Operation(boolean add, String name, String dir, String date) {
+         this.add = add;
+         this.name = name;
+         this.dir = dir;
+         this.date = date;
+      }
+   }
+}
@@ -0,0 +1,58 @@
+/**
+ * Changes between two file systems, as returned by FileSystem.diff. Files are listed
+ * in no particular order
+ */
+
+import java.util.ArrayList;
+
+public class CatalogDiff {
+
+   ArrayList<FileData> added;
+   ArrayList<FileData> removed;
+   ArrayList<FileData> modified;
+
+   /**
+    * Constructs a diff without changes
+    */
+   CatalogDiff() {
+      this.added = new ArrayList<FileData>();
+      this.removed = new ArrayList<FileData>();
+      this.modified = new ArrayList<FileData>();
+   }
+
+   /**
+    * @return the files of the other file system that are not in this one
+    */
+   public ArrayList<FileData> added() {
+      return this.added;
+   }
+
+   /**
+    * @return the files of this file system that are not in the other one
+    */
+   public ArrayList<FileData> removed() {
+      return this.removed;
+   }
+
+   /**
+    * @return the files of the other file system whose date differs from the file with
+    *         the same name and directory in this one
+    */
+   public ArrayList<FileData> modified() {
+      return this.modified;
+   }
+
+   /**
+    * @return the number of changes
+    */
+   public int size() {
+      return this.added.size() + this.removed.size() + this.modified.size();
+   }
+
+   /**
+    * @return true if both file systems hold the same files
+    */
+   public boolean isEmpty() {
+      return this.size() == 0;
+   }
+}
@@ -0,0 +1,144 @@
+/**
+ * Counting Bloom filter over hashed keys. Each key increments k byte counters, so keys
+ * can be removed again. A counter that reaches its maximum is never decremented, which
+ * may keep a removed key "possibly present" but never reports a stored key as absent
+ */
+
+public class CountingBloomFilter {
+   public static final String ILLEGAL_ARG_EXPECTED = "Expected keys must be positive";
+   public static final String ILLEGAL_ARG_FPP = "False positive rate must be in (0, 1)";
+
+   private static final int SATURATED = 0xFF;
+
+   private byte[] counters;
+   private int hashCount;
+   private int expected;
+   private int size;
+
+   /**
+    * Constructs an empty filter sized for a number of keys and false positive rate
+    *
+    * @param expected The number of keys the filter is sized for
+    * @param fpp      The false positive rate at the expected number of keys
+    * @throws IllegalArgumentException if expected is not positive or fpp is not
+    *                                  between 0 and 1
+    */
+   public CountingBloomFilter(int expected, double fpp) throws IllegalArgumentException {
+      if (expected <= 0) {
+         throw new IllegalArgumentException(ILLEGAL_ARG_EXPECTED);
+      }
+      if (!(fpp > 0 && fpp < 1)) {
+         throw new IllegalArgumentException(ILLEGAL_ARG_FPP);
+      }
+
+      // m = -n ln p / (ln 2)^2 counters and k = m / n ln 2 hashes
+      long m = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+      this.counters = new byte[(int) Math.min(Math.max(m, 64), Integer.MAX_VALUE - 8)];
+      this.hashCount = Math.max(1,
+            (int) Math.round((double) this.counters.length / expected * Math.log(2)));
+      this.expected = expected;
+   }
+
+   /**
+    * Adds a key
+    *
+    * @param hash The 64-bit hash of the key
+    */
+   public void add(long hash) {
+      int h1 = (int) hash;
+      int h2 = (int) (hash >>> 32) | 1;
+      for (int i = 0; i < this.hashCount; i++) {
+         int index = Math.floorMod(h1 + i * h2, this.counters.length);
+         if ((this.counters[index] & 0xFF) != SATURATED) {
+            this.counters[index]++;
+         }
+      }
+      this.size++;
+   }
+
+   /**
+    * Removes a key that was added
+    *
+    * @param hash The 64-bit hash of the key
+    */
+   public void remove(long hash) {
+      int h1 = (int) hash;
+      int h2 = (int) (hash >>> 32) | 1;
+      for (int i = 0; i < this.hashCount; i++) {
+         int index = Math.floorMod(h1 + i * h2, this.counters.length);
+         int count = this.counters[index] & 0xFF;
+         if (count != SATURATED && count != 0) {
+            this.counters[index]--;
+         }
+      }
+      this.size--;
+   }
+
+   /**
+    * Checks if a key may have been added
+    *
+    * @param hash The 64-bit hash of the key
+    * @return false if the key is definitely absent
+    */
+   public boolean mightContain(long hash) {
+      int h1 = (int) hash;
+      int h2 = (int) (hash >>> 32) | 1;
+      for (int i = 0; i < this.hashCount; i++) {
+         if (this.counters[Math.floorMod(h1 + i * h2, this.counters.length)] == 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * @return true if the filter holds more keys than it was sized for, so its false
+    *         positive rate is above the requested one
+    */
+   public boolean isFull() {
+      return this.size > this.expected;
+   }
+
+   /**
+    * @return the number of keys in the filter
+    */
+   public int size() {
+      return this.size;
+   }
+
+   /**
+    * Hashes a key
+    *
+    * @param key The key
+    * @return the 64-bit hash of the key
+    */
+   public static long hash(String key) {
+      return mix(key.hashCode());
+   }
+
+   /**
+    * Hashes a pair of keys
+    *
+    * @param first  The first key
+    * @param second The second key
+    * @return the 64-bit hash of the pair
+    */
+   public static long hash(String first, String second) {
+      return mix(first.hashCode() * 0x9E3779B97F4A7C15L + second.hashCode());
+   }
+
+   /**
+    * Spreads the bits of a hash code over 64 bits, the finalizer of MurmurHash3
+    *
+    * @param h The hash code
+    * @return the mixed hash
+    */
+   private static long mix(long h) {
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      h *= 0xC4CEB9FE1A85EC53L;
+      h ^= h >>> 33;
+      return h;
+   }
+}
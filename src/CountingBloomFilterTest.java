@@ -0,0 +1,69 @@
+/**
+ * Unit testing for the counting Bloom filter
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public class CountingBloomFilterTest {
+
+   private CountingBloomFilter filter;
+
+   // Creates a filter for 10000 keys with a 1% false positive rate
+   @Before
+   public void initialize() {
+      filter = new CountingBloomFilter(10000, 0.01);
+   }
+
+   // Test if every added key is found and the false positive rate is near the target
+   @Test
+   public void testNoFalseNegatives() {
+      for (int i = 0; i < 10000; i++) {
+         filter.add(CountingBloomFilter.hash("file" + i, "/dir" + i % 7));
+      }
+      for (int i = 0; i < 10000; i++) {
+         long hash = CountingBloomFilter.hash("file" + i, "/dir" + i % 7);
+         assertTrue(filter.mightContain(hash));
+      }
+
+      int falsePositives = 0;
+      for (int i = 10000; i < 20000; i++) {
+         if (filter.mightContain(CountingBloomFilter.hash("file" + i, "/dir" + i % 7))) {
+            falsePositives++;
+         }
+      }
+      assertTrue(falsePositives < 300);
+   }
+
+   // Test if a removed key is absent and the other keys are kept
+   @Test
+   public void testRemove() {
+      filter.add(CountingBloomFilter.hash("a.txt"));
+      filter.add(CountingBloomFilter.hash("b.txt"));
+      filter.remove(CountingBloomFilter.hash("a.txt"));
+
+      assertFalse(filter.mightContain(CountingBloomFilter.hash("a.txt")));
+      assertTrue(filter.mightContain(CountingBloomFilter.hash("b.txt")));
+      assertEquals(1, filter.size());
+   }
+
+   // Test if saturated counters are never decremented
+   @Test
+   public void testSaturation() {
+      long hash = CountingBloomFilter.hash("a.txt");
+      for (int i = 0; i < 300; i++) {
+         filter.add(hash);
+      }
+      for (int i = 0; i < 299; i++) {
+         filter.remove(hash);
+      }
+      assertTrue(filter.mightContain(hash));
+   }
+
+   // Test if invalid sizes are rejected
+   @Test(expected = IllegalArgumentException.class)
+   public void testInvalidRate() {
+      new CountingBloomFilter(100, 1.0);
+   }
+}
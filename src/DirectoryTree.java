@@ -0,0 +1,258 @@
+/**
+ * Tree of the directories of a file system with a content hash per directory. The hash
+ * of a directory is the sum of the hashes of the (directory, name, date) of every file
+ * in it and its subdirectories, so adding or removing a file only updates the
+ * directories on its path, and two trees with the same hash hold the same files
+ *
+ * The parent of a directory is the part before its last '/'. Top level directories,
+ * including "/", are children of a root with the empty path
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+class DirectoryTree {
+   private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+   private static final long FNV_PRIME = 0x100000001B3L;
+
+   private Node root;
+   private HashMap<String, Node> nodes;
+
+   /**
+    * Constructs a tree with no files
+    */
+   DirectoryTree() {
+      this.root = new Node("", null);
+      this.nodes = new HashMap<String, Node>();
+      this.nodes.put("", this.root);
+   }
+
+   /**
+    * Adds a file to its directory, creating the directories on its path
+    *
+    * @param f The file, not already in the tree
+    */
+   void add(FileData f) {
+      Node node = this.nodeOf(f.dir);
+      node.files.put(f.name, f);
+
+      long hash = hash(f);
+      node.fileHash += hash;
+      for (Node n = node; n != null; n = n.parent) {
+         n.hash += hash;
+         n.size++;
+      }
+   }
+
+   /**
+    * Removes a file from its directory, removing the directories left empty
+    *
+    * @param f The file, in the tree
+    */
+   void remove(FileData f) {
+      Node node = this.nodes.get(f.dir);
+      node.files.remove(f.name);
+
+      long hash = hash(f);
+      node.fileHash -= hash;
+      for (Node n = node; n != null; n = n.parent) {
+         n.hash -= hash;
+         n.size--;
+      }
+
+      while (node != this.root && node.files.isEmpty() && node.children.isEmpty()) {
+         node.parent.children.remove(node.dir);
+         this.nodes.remove(node.dir);
+         node = node.parent;
+      }
+   }
+
+   /**
+    * Returns the hash of the files in a directory and its subdirectories
+    *
+    * @param dir The directory, the empty path for the whole tree
+    * @return the hash, 0 if the directory has no files
+    */
+   long hashOf(String dir) {
+      Node node = this.nodes.get(dir);
+      return node == null ? 0 : node.hash;
+   }
+
+   /**
+    * Returns the number of files in a directory and its subdirectories
+    *
+    * @param dir The directory, the empty path for the whole tree
+    * @return the number of files, 0 if the directory has no files
+    */
+   int sizeOf(String dir) {
+      Node node = this.nodes.get(dir);
+      return node == null ? 0 : node.size;
+   }
+
+   /**
+    * Streams the files in a directory and its subdirectories without copying them. The
+    * stream is lazy and must be consumed before the tree is modified
+    *
+    * @param dir The directory, the empty path for the whole tree
+    * @return Stream with the files under the directory
+    */
+   Stream<FileData> streamUnder(String dir) {
+      Node node = this.nodes.get(dir);
+      return node == null ? Stream.empty() : node.stream();
+   }
+
+   /**
+    * Finds the changes that turn this tree into another one. Only the directories whose
+    * hashes differ are visited
+    *
+    * @param other The other tree
+    * @return the files added, removed and modified in other
+    */
+   CatalogDiff diff(DirectoryTree other) {
+      CatalogDiff diff = new CatalogDiff();
+      if (this.root.hash != other.root.hash) {
+         diff(this.root, other.root, diff);
+      }
+      return diff;
+   }
+
+   /**
+    * Compares two directories with different hashes
+    *
+    * @param a    The directory in this tree
+    * @param b    The directory with the same path in the other tree
+    * @param diff The changes found so far
+    */
+   private static void diff(Node a, Node b, CatalogDiff diff) {
+      if (a.fileHash != b.fileHash) {
+         for (FileData f : a.files.values()) {
+            FileData g = b.files.get(f.name);
+            if (g == null) {
+               diff.removed.add(f);
+            }
+            else if (!g.lastModifiedDate.equals(f.lastModifiedDate)) {
+               diff.modified.add(g);
+            }
+         }
+         for (FileData g : b.files.values()) {
+            if (!a.files.containsKey(g.name)) {
+               diff.added.add(g);
+            }
+         }
+      }
+
+      for (Map.Entry<String, Node> child : a.children.entrySet()) {
+         Node other = b.children.get(child.getKey());
+         if (other == null) {
+            child.getValue().collect(diff.removed);
+         }
+         else if (other.hash != child.getValue().hash) {
+            diff(child.getValue(), other, diff);
+         }
+      }
+      for (Map.Entry<String, Node> child : b.children.entrySet()) {
+         if (!a.children.containsKey(child.getKey())) {
+            child.getValue().collect(diff.added);
+         }
+      }
+   }
+
+   /**
+    * Returns the node of a directory, creating it and its missing ancestors
+    *
+    * @param dir The directory
+    * @return the node of the directory
+    */
+   private Node nodeOf(String dir) {
+      Node node = this.nodes.get(dir);
+      if (node == null) {
+         Node parent = this.nodeOf(parentOf(dir));
+         node = new Node(dir, parent);
+         parent.children.put(dir, node);
+         this.nodes.put(dir, node);
+      }
+      return node;
+   }
+
+   /**
+    * Returns the parent of a directory
+    *
+    * @param dir The directory, not the root
+    * @return the part of dir before its last '/', the root if there is none
+    */
+   static String parentOf(String dir) {
+      int slash = dir.lastIndexOf('/');
+      return slash <= 0 ? "" : dir.substring(0, slash);
+   }
+
+   /**
+    * Hashes the directory, name and date of a file with 64-bit FNV-1a, mixed so the
+    * sums of different sets of files are unlikely to be equal
+    *
+    * @param f The file
+    * @return the hash of the file
+    */
+   private static long hash(FileData f) {
+      long h = FNV_OFFSET;
+      h = hash(h, f.dir);
+      h = hash(h, f.name);
+      h = hash(h, f.lastModifiedDate);
+
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      return h;
+   }
+
+   private static long hash(long h, String s) {
+      for (int i = 0; i < s.length(); i++) {
+         h = (h ^ s.charAt(i)) * FNV_PRIME;
+      }
+      // separates the strings, so ("ab", "c") and ("a", "bc") differ
+      return (h ^ 0xFFFF) * FNV_PRIME;
+   }
+
+   /**
+    * A directory with its files and subdirectories
+    */
+   private static class Node {
+      private String dir;
+      private Node parent;
+      // hash of the files in this directory and of the whole subtree
+      private long fileHash;
+      private long hash;
+      // number of files in the whole subtree
+      private int size;
+      private HashMap<String, FileData> files;
+      private HashMap<String, Node> children;
+
+      private Node(String dir, Node parent) {
+         this.dir = dir;
+         this.parent = parent;
+         this.files = new HashMap<String, FileData>();
+         this.children = new HashMap<String, Node>();
+      }
+
+      /**
+       * @return Stream with the files of this directory and its subdirectories
+       */
+      private Stream<FileData> stream() {
+         return Stream.concat(this.files.values().stream(),
+               this.children.values().stream().flatMap(Node::stream));
+      }
+
+      /**
+       * Adds the files of this directory and its subdirectories to a list
+       *
+       * @param list The list
+       */
+      private void collect(ArrayList<FileData> list) {
+         list.addAll(this.files.values());
+         for (Node child : this.children.values()) {
+            child.collect(list);
+         }
+      }
+   }
+}
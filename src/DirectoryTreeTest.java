@@ -0,0 +1,52 @@
+/**
+ * Unit testing for the directory tree of content hashes
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public class DirectoryTreeTest {
+
+   // Test if the parent of a directory is the part before its last '/'
+   @Test
+   public void testParentOf() {
+      assertEquals("/user", DirectoryTree.parentOf("/user/abc"));
+      assertEquals("", DirectoryTree.parentOf("/user"));
+      assertEquals("", DirectoryTree.parentOf("/"));
+      assertEquals("", DirectoryTree.parentOf("user"));
+   }
+
+   // Test if the hashes do not depend on the order files are added in
+   @Test
+   public void testHashIsOrderIndependent() {
+      DirectoryTree a = new DirectoryTree();
+      DirectoryTree b = new DirectoryTree();
+      FileData[] files = { new FileData("a.txt", "/user/abc", "01/01/2021"),
+            new FileData("b.txt", "/user", "01/02/2021"),
+            new FileData("c.txt", "/home", "01/03/2021") };
+
+      for (int i = 0; i < files.length; i++) {
+         a.add(files[i]);
+         b.add(files[files.length - 1 - i]);
+      }
+
+      assertEquals(a.hashOf(""), b.hashOf(""));
+      assertEquals(a.hashOf("/user"), b.hashOf("/user"));
+      assertNotEquals(a.hashOf("/user"), a.hashOf("/user/abc"));
+   }
+
+   // Test if a directory left without files is removed with its empty parents
+   @Test
+   public void testRemovePrunesEmptyDirectories() {
+      DirectoryTree tree = new DirectoryTree();
+      FileData f = new FileData("a.txt", "/user/abc/def", "01/01/2021");
+      tree.add(f);
+      assertNotEquals(0, tree.hashOf("/user"));
+
+      tree.remove(f);
+      assertEquals(0, tree.hashOf("/user/abc/def"));
+      assertEquals(0, tree.hashOf("/user"));
+      assertEquals(0, tree.hashOf(""));
+   }
+}
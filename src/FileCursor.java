@@ -0,0 +1,323 @@
+/**
+ * Cursor over a page of the files of a file system, of a name or of a date. The files
+ * of a name are kept sorted by directory and the files of a date by name and directory,
+ * so the continuation token only holds the name and directory of the last file of the
+ * page, and resuming is a binary search in the list it was in. Paging over all the
+ * files goes through the buckets of the nameMap, names of the same bucket in
+ * alphabetical order, and the token also holds the capacity of the map when paging
+ * started. A page only reads the lists it returns files from, and files added or
+ * removed between pages do not move the other files in the order, so a file present
+ * while paging is returned exactly once
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class FileCursor implements Iterator<FileData> {
+   public static final String ILLEGAL_ARG_LIMIT = "Limit must be positive";
+   public static final String ILLEGAL_ARG_TOKEN = "Invalid continuation token";
+
+   // kinds of cursor, so a token is only accepted by the kind of cursor it came from
+   private static final char ALL = 'a';
+   private static final char BY_NAME = 'n';
+   private static final char BY_DATE = 'd';
+
+   private Iterator<FileData> page;
+   private String nextToken;
+
+   /**
+    * Constructs a cursor over a page of files
+    *
+    * @param page      The files of the page
+    * @param nextToken The token of the next page, null if this is the last one
+    */
+   private FileCursor(List<FileData> page, String nextToken) {
+      this.page = page.iterator();
+      this.nextToken = nextToken;
+   }
+
+   /**
+    * Opens a cursor over the files of a file system starting after the position
+    * encoded in a continuation token. The page is read under the read lock
+    *
+    * @param fs    The file system
+    * @param token The token returned by a previous cursor, null to start from the
+    *              beginning
+    * @param limit The maximum number of files returned by the cursor
+    * @return a cursor with the next page of files
+    * @throws IllegalArgumentException if limit is not positive or token is invalid
+    */
+   public static FileCursor open(FileSystem fs, String token, int limit)
+         throws IllegalArgumentException {
+      Position after = Position.decode(token, ALL, limit);
+
+      fs.lock.readLock().lock();
+      try {
+         MyHashMap<String, ArrayList<FileData>> names = fs.nameMap;
+         int capacity = after == null ? names.capacity() : after.capacity;
+         if (capacity == 0) {
+            return new FileCursor(new ArrayList<FileData>(), null);
+         }
+         if (names.capacity() % capacity != 0) {
+            throw new IllegalArgumentException(ILLEGAL_ARG_TOKEN);
+         }
+
+         // reads one file more than the page to know if there is a next page
+         ArrayList<FileData> page = new ArrayList<FileData>(limit + 1);
+         int first = after == null ? 0 : names.bucketOf(after.name, capacity);
+
+         for (int bucket = first; bucket < capacity && page.size() <= limit; bucket++) {
+            List<String> keys = names.keysInBucket(bucket, capacity);
+            Collections.sort(keys);
+
+            for (String name : keys) {
+               ArrayList<FileData> postings = names.get(name);
+               int start = 0;
+               if (after != null && bucket == first) {
+                  int order = name.compareTo(after.name);
+                  if (order < 0) {
+                     continue;
+                  }
+                  if (order == 0) {
+                     start = after.resumeIndex(postings, FileSystem.BY_DIR);
+                  }
+               }
+
+               copy(postings, start, page, limit);
+               if (page.size() > limit) {
+                  break;
+               }
+            }
+         }
+         return finish(page, limit, ALL, capacity);
+      }
+      finally {
+         fs.lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Opens a cursor over the files with a name, in the order of their directories,
+    * starting after the position encoded in a continuation token. The page is read
+    * under the read lock
+    *
+    * @param fs    The file system
+    * @param name  The name of the files
+    * @param token The token returned by a previous cursor of the name, null to start
+    *              from the beginning
+    * @param limit The maximum number of files returned by the cursor
+    * @return a cursor with the next page of files
+    * @throws IllegalArgumentException if limit is not positive or token is invalid
+    */
+   public static FileCursor byName(FileSystem fs, String name, String token, int limit)
+         throws IllegalArgumentException {
+      Position after = Position.decode(token, BY_NAME, limit);
+      return open(fs, fs.nameMap, name, after, limit, BY_NAME, FileSystem.BY_DIR);
+   }
+
+   /**
+    * Opens a cursor over the files with a last modified date, in the order of their
+    * names and directories, starting after the position encoded in a continuation
+    * token. The page is read under the read lock
+    *
+    * @param fs           The file system
+    * @param modifiedDate The date of the files
+    * @param token        The token returned by a previous cursor of the date, null to
+    *                     start from the beginning
+    * @param limit        The maximum number of files returned by the cursor
+    * @return a cursor with the next page of files
+    * @throws IllegalArgumentException if limit is not positive or token is invalid
+    */
+   public static FileCursor byDate(FileSystem fs, String modifiedDate, String token,
+         int limit) throws IllegalArgumentException {
+      Position after = Position.decode(token, BY_DATE, limit);
+      return open(fs, fs.dateMap, modifiedDate, after, limit, BY_DATE,
+            FileSystem.BY_NAME_AND_DIR);
+   }
+
+   /**
+    * Reads a page of the files of a key
+    *
+    * @param fs    The file system
+    * @param map   The name or date map
+    * @param key   The key of the files
+    * @param after The position of the last file of the previous page, null to start
+    *              from the beginning
+    * @param limit The maximum number of files of the page
+    * @param kind  The kind of the cursor
+    * @param order The order of the files of a key in the map
+    * @return a cursor with the next page of files
+    */
+   private static FileCursor open(FileSystem fs,
+         MyHashMap<String, ArrayList<FileData>> map, String key, Position after,
+         int limit, char kind, Comparator<FileData> order) {
+      fs.lock.readLock().lock();
+      try {
+         ArrayList<FileData> postings = key == null ? null : map.get(key);
+         if (postings == null) {
+            return new FileCursor(new ArrayList<FileData>(), null);
+         }
+
+         ArrayList<FileData> page = new ArrayList<FileData>(limit + 1);
+         copy(postings, after == null ? 0 : after.resumeIndex(postings, order), page,
+               limit);
+         return finish(page, limit, kind, 0);
+      }
+      finally {
+         fs.lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Copies files of a list to a page until the page has one file more than the limit
+    *
+    * @param postings The files of a key
+    * @param start    The index of the first file to copy
+    * @param page     The page
+    * @param limit    The maximum number of files of the page
+    */
+   private static void copy(ArrayList<FileData> postings, int start,
+         ArrayList<FileData> page, int limit) {
+      for (int i = start; i < postings.size() && page.size() <= limit; i++) {
+         page.add(postings.get(i));
+      }
+   }
+
+   /**
+    * Makes the cursor of a page read with one file more than the limit if there is a
+    * next page
+    *
+    * @param page     The files read
+    * @param limit    The maximum number of files of the page
+    * @param kind     The kind of the cursor
+    * @param capacity The capacity of the nameMap when paging started, 0 for the
+    *                 cursors of a key
+    * @return the cursor over the page
+    */
+   private static FileCursor finish(ArrayList<FileData> page, int limit, char kind,
+         int capacity) {
+      if (page.size() <= limit) {
+         return new FileCursor(page, null);
+      }
+      page.remove(limit);
+      FileData last = page.get(limit - 1);
+      return new FileCursor(page, new Position(kind, capacity, last.name, last.dir)
+            .encode());
+   }
+
+   /**
+    * Returns if this cursor has files left in its page
+    *
+    * @return true if next() can be called
+    */
+   @Override
+   public boolean hasNext() {
+      return this.page.hasNext();
+   }
+
+   /**
+    * Returns the next file of the page
+    *
+    * @return the next FileData object
+    * @throws NoSuchElementException if the page has no more files
+    */
+   @Override
+   public FileData next() {
+      if (!this.hasNext()) {
+         throw new NoSuchElementException();
+      }
+      return this.page.next();
+   }
+
+   /**
+    * Returns the token that resumes paging after the files of this page
+    *
+    * @return the continuation token, null if there are no more files
+    */
+   public String nextToken() {
+      return this.nextToken;
+   }
+
+   /**
+    * The position of a file in the paging order
+    */
+   private static class Position {
+      private char kind;
+      private int capacity;
+      private String name;
+      private String dir;
+
+      private Position(char kind, int capacity, String name, String dir) {
+         this.kind = kind;
+         this.capacity = capacity;
+         this.name = name;
+         this.dir = dir;
+      }
+
+      /**
+       * Returns the index in a sorted list of the first file after this position,
+       * whether the file of this position is still in the list or not
+       *
+       * @param postings The files of a key
+       * @param order    The order of the list
+       * @return the index to resume at
+       */
+      private int resumeIndex(ArrayList<FileData> postings, Comparator<FileData> order) {
+         int i = Collections.binarySearch(postings,
+               new FileData(this.name, this.dir, null), order);
+         return i < 0 ? -i - 1 : i + 1;
+      }
+
+      /**
+       * @return the position as an URL safe token
+       */
+      private String encode() {
+         String s = this.kind + ":" + this.capacity + ":" + this.name.length() + ":"
+               + this.name + this.dir;
+         return Base64.getUrlEncoder().withoutPadding()
+               .encodeToString(s.getBytes(StandardCharsets.UTF_8));
+      }
+
+      /**
+       * Checks the limit of a page and parses the token of its cursor
+       *
+       * @param token The token, null to start from the beginning
+       * @param kind  The kind of the cursor
+       * @param limit The maximum number of files of the page
+       * @return the position in the token, null if there is no token
+       * @throws IllegalArgumentException if limit is not positive or token is invalid
+       */
+      private static Position decode(String token, char kind, int limit)
+            throws IllegalArgumentException {
+         if (limit <= 0) {
+            throw new IllegalArgumentException(ILLEGAL_ARG_LIMIT);
+         }
+         if (token == null) {
+            return null;
+         }
+
+         try {
+            String s = new String(Base64.getUrlDecoder().decode(token),
+                  StandardCharsets.UTF_8);
+            String[] parts = s.split(":", 4);
+            int capacity = Integer.parseInt(parts[1]);
+            int length = Integer.parseInt(parts[2]);
+            if (parts[0].length() != 1 || parts[0].charAt(0) != kind || capacity < 0
+                  || (kind == ALL) != (capacity > 0)) {
+               throw new IllegalArgumentException(ILLEGAL_ARG_TOKEN);
+            }
+            return new Position(kind, capacity, parts[3].substring(0, length),
+                  parts[3].substring(length));
+         }
+         catch (RuntimeException e) {
+            throw new IllegalArgumentException(ILLEGAL_ARG_TOKEN);
+         }
+      }
+   }
+}
@@ -0,0 +1,273 @@
+/**
+ * Composite query over a file system. Conditions on name, date range and directory are
+ * combined, and the most selective index is used to find the candidate files
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class FileQuery {
+   public static final String ILLEGAL_ARG_NULL_CONDITION = "Conditions must be non-null";
+
+   private FileSystem fs;
+
+   private String name;
+   private Pattern namePattern;
+   private int fromDate = Integer.MIN_VALUE;
+   private int toDate = Integer.MAX_VALUE;
+   private boolean hasDateRange;
+   private String directory;
+
+   /**
+    * Constructs a query without conditions over the specified file system
+    *
+    * @param fs The file system to be searched
+    */
+   FileQuery(FileSystem fs) {
+      this.fs = fs;
+   }
+
+   /**
+    * Only matches files with the specified name. The characters * and ? are wildcards
+    * for any sequence of characters and any single character
+    *
+    * @param name The name or pattern of the files
+    * @return this query
+    * @throws IllegalArgumentException if name is null
+    */
+   public FileQuery name(String name) throws IllegalArgumentException {
+      if (name == null) {
+         throw new IllegalArgumentException(ILLEGAL_ARG_NULL_CONDITION);
+      }
+
+      if (name.indexOf('*') >= 0 || name.indexOf('?') >= 0) {
+         this.name = null;
+         this.namePattern = toPattern(name);
+      }
+      else {
+         this.name = name;
+         this.namePattern = null;
+      }
+      return this;
+   }
+
+   /**
+    * Only matches files last modified between two dates, both inclusive. Dates use the
+    * MM/dd/yyyy format, files with a malformed date never match
+    *
+    * @param from The first date of the range
+    * @param to   The last date of the range
+    * @return this query
+    * @throws IllegalArgumentException if a date is null or malformed
+    */
+   public FileQuery dateBetween(String from, String to) throws IllegalArgumentException {
+      if (from == null || to == null) {
+         throw new IllegalArgumentException(ILLEGAL_ARG_NULL_CONDITION);
+      }
+
+      this.fromDate = toSortableDate(from);
+      this.toDate = toSortableDate(to);
+      if (this.fromDate < 0 || this.toDate < 0) {
+         throw new IllegalArgumentException("Dates must be in MM/dd/yyyy format");
+      }
+      this.hasDateRange = true;
+      return this;
+   }
+
+   /**
+    * Only matches files stored in the specified directory or any of its subdirectories
+    *
+    * @param directory The directory prefix of the files
+    * @return this query
+    * @throws IllegalArgumentException if directory is null
+    */
+   public FileQuery under(String directory) throws IllegalArgumentException {
+      if (directory == null) {
+         throw new IllegalArgumentException(ILLEGAL_ARG_NULL_CONDITION);
+      }
+
+      this.directory = directory;
+      return this;
+   }
+
+   /**
+    * Runs the query
+    *
+    * @return ArrayList with the FileData objects that match every condition
+    */
+   public ArrayList<FileData> find() {
+      this.fs.lock.readLock().lock();
+      try {
+         return this.stream().collect(Collectors.toCollection(ArrayList::new));
+      }
+      finally {
+         this.fs.lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Runs the query lazily. The candidates come from the index with the fewest files
+    * for this query: the name postings, the postings of the dates in the range, the
+    * files under the directory when the directory index is enabled, or every file when
+    * no condition can use an index. The other conditions are checked on each
+    * candidate. The index is chosen under the read lock, but the stream must be
+    * consumed before the file system is modified
+    *
+    * @return Stream with the FileData objects that match every condition
+    */
+   public Stream<FileData> stream() {
+      this.fs.lock.readLock().lock();
+      try {
+         return this.candidates().filter(this::matches);
+      }
+      finally {
+         this.fs.lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Chooses the index with the fewest files for this query. Must be called with the
+    * read lock held
+    *
+    * @return Stream with the candidate files
+    */
+   private Stream<FileData> candidates() {
+      long nameCost = Long.MAX_VALUE;
+      long dateCost = Long.MAX_VALUE;
+      long directoryCost = Long.MAX_VALUE;
+      List<ArrayList<FileData>> dates = null;
+
+      if (this.name != null) {
+         nameCost = this.fs.nameCardinality(this.name);
+      }
+
+      if (this.hasDateRange) {
+         dates = new ArrayList<ArrayList<FileData>>();
+         dateCost = 0;
+         for (String date : this.fs.dateMap.keys()) {
+            int sortable = toSortableDate(date);
+            if (sortable >= this.fromDate && sortable <= this.toDate) {
+               ArrayList<FileData> postings = this.fs.dateMap.get(date);
+               dates.add(postings);
+               dateCost += postings.size();
+            }
+         }
+      }
+
+      // a directory ending with '/' matches every directory with that prefix, which
+      // the index does not group
+      DirectoryTree tree = this.fs.directories;
+      boolean indexed = tree != null && this.directory != null
+            && !this.directory.isEmpty() && !this.directory.endsWith("/");
+      if (indexed) {
+         directoryCost = tree.sizeOf(this.directory);
+      }
+
+      if (this.name != null && nameCost <= dateCost && nameCost <= directoryCost) {
+         return this.fs.streamFilesByName(this.name);
+      }
+      else if (dates != null && dateCost <= directoryCost) {
+         return dates.stream().flatMap(ArrayList::stream);
+      }
+      else if (indexed) {
+         return tree.streamUnder(this.directory);
+      }
+      return this.fs.streamAll();
+   }
+
+   /**
+    * Checks a file against every condition of this query
+    *
+    * @param f The file to be checked
+    * @return true if the file matches the query
+    */
+   private boolean matches(FileData f) {
+      if (this.name != null && !this.name.equals(f.name)) {
+         return false;
+      }
+      if (this.namePattern != null && !this.namePattern.matcher(f.name).matches()) {
+         return false;
+      }
+      if (this.hasDateRange) {
+         int date = toSortableDate(f.lastModifiedDate);
+         if (date < this.fromDate || date > this.toDate) {
+            return false;
+         }
+      }
+      if (this.directory != null && !isUnder(f.dir, this.directory)) {
+         return false;
+      }
+      return true;
+   }
+
+   /**
+    * Returns if a directory is the same as or a subdirectory of another one
+    *
+    * @param dir    The directory to be checked
+    * @param parent The parent directory
+    * @return true if dir is under parent
+    */
+   static boolean isUnder(String dir, String parent) {
+      if (!dir.startsWith(parent)) {
+         return false;
+      }
+      return dir.length() == parent.length() || parent.endsWith("/")
+            || dir.charAt(parent.length()) == '/';
+   }
+
+   /**
+    * Converts a MM/dd/yyyy date to an int that sorts in chronological order
+    *
+    * @param date The date to be converted
+    * @return the date as yyyyMMdd, -1 if the date is malformed
+    */
+   static int toSortableDate(String date) {
+      String[] parts = date.split("/");
+      if (parts.length != 3) {
+         return -1;
+      }
+
+      try {
+         int month = Integer.parseInt(parts[0]);
+         int day = Integer.parseInt(parts[1]);
+         int year = Integer.parseInt(parts[2]);
+         if (month < 1 || month > 12 || day < 1 || day > 31 || year < 0) {
+            return -1;
+         }
+         return year * 10000 + month * 100 + day;
+      }
+      catch (NumberFormatException e) {
+         return -1;
+      }
+   }
+
+   /**
+    * Converts a name with * and ? wildcards to a regular expression
+    *
+    * @param glob The name with wildcards
+    * @return the compiled pattern
+    */
+   private static Pattern toPattern(String glob) {
+      StringBuilder regex = new StringBuilder();
+      int start = 0;
+
+      for (int i = 0; i < glob.length(); i++) {
+         char c = glob.charAt(i);
+         if (c == '*' || c == '?') {
+            if (i > start) {
+               regex.append(Pattern.quote(glob.substring(start, i)));
+            }
+            regex.append(c == '*' ? ".*" : ".");
+            start = i + 1;
+         }
+      }
+      if (start < glob.length()) {
+         regex.append(Pattern.quote(glob.substring(start)));
+      }
+
+      return Pattern.compile(regex.toString());
+   }
+}
@@ -1,17 +1,76 @@
 /**
- * Creates and manages a file system using hash maps for date and name
+ * Creates and manages a file system using hash maps for date and name. Operations are
+ * safe to call from several threads, streams are not
  */
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class FileSystem {
+   public static final String OP_ADD = "add";
+   public static final String OP_FIND_FILE = "findFile";
+   public static final String OP_FIND_BY_NAME = "findFilesByName";
+   public static final String OP_REMOVE_FILE = "removeFile";
+   // number of lines of a consistent duplicate report waiting for the writer
+   public static final int REPORT_QUEUE_SIZE = 1024;
+
+   // above this many files, apply indexes a name list by directory and removes from a
+   // list in a single scan
+   private static final int BATCH_SCAN_THRESHOLD = 32;
+
+   // prefixes of the query cache keys, followed by the date
+   private static final String QUERY_BY_DATE = "date:";
+   private static final String QUERY_MULT_DIR = "multdir:";
+   // marks the end of a consistent duplicate report in its queue of lines
+   private static final String END_OF_REPORT = new String();
+
+   // order of the lists of the nameMap and of the dateMap, so a FileCursor resumes a
+   // list with a binary search
+   static final Comparator<FileData> BY_DIR = Comparator.comparing(f -> f.dir);
+   static final Comparator<FileData> BY_NAME_AND_DIR = Comparator
+         .comparing((FileData f) -> f.name).thenComparing(BY_DIR);
 
    MyHashMap<String, ArrayList<FileData>> nameMap;
    MyHashMap<String, ArrayList<FileData>> dateMap;
 
+   // receives operation latencies, null when metrics are disabled
+   private volatile MetricsListener listener;
+
+   // results of date queries, null when the cache is disabled
+   private volatile QueryCache cache;
+
+   // answer lookups of absent files and names without the maps, null when disabled
+   private CountingBloomFilter fileFilter;
+   private CountingBloomFilter nameFilter;
+   private double filterFpp;
+
+   // files and content hashes by directory, null until diff or enableDirectoryIndex
+   DirectoryTree directories;
+
+   // queries share the read lock, add and remove take the write lock
+   final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
    /**
     * Constructs an empty FileSystem object
     */
@@ -52,36 +111,64 @@ public class FileSystem {
     * @return true if successfully added to the list
     */
    public boolean add(String fileName, String directory, String modifiedDate) {
-
-      // Cannot add file with the same name and directory
-      if (this.findFile(fileName, directory) != null) {
-         return false;
+      MetricsListener listener = this.listener;
+      if (listener == null) {
+         return this.addFile(fileName, directory, modifiedDate);
       }
 
-      FileData fileData = new FileData(fileName, directory, modifiedDate);
+      long start = System.nanoTime();
+      boolean added = this.addFile(fileName, directory, modifiedDate);
+      listener.operation(OP_ADD, System.nanoTime() - start);
+      return added;
+   }
+
+   /**
+    * Adds a file without recording its latency
+    * 
+    * @see #add(String, String, String)
+    */
+   private boolean addFile(String fileName, String directory, String modifiedDate) {
+      this.lock.writeLock().lock();
+      try {
+         // Cannot add file with the same name and directory
+         if (this.lookupFile(fileName, directory) != null) {
+            return false;
+         }
+
+         FileData fileData = new FileData(fileName, directory, modifiedDate);
 
-      // Create separate arrays to avoid referencing both maps with same ArrayList
-      ArrayList<FileData> fileArrayName = new ArrayList<FileData>();
-      ArrayList<FileData> filedArrayDate = new ArrayList<FileData>();
-      fileArrayName.add(fileData);
-      filedArrayDate.add(fileData);
+         // Create separate arrays to avoid referencing both maps with same ArrayList
+         ArrayList<FileData> fileArrayName = new ArrayList<FileData>();
+         ArrayList<FileData> filedArrayDate = new ArrayList<FileData>();
+         fileArrayName.add(fileData);
+         filedArrayDate.add(fileData);
 
-      // Attempts to add a new (key, value) to each map.
-      boolean addedName = this.nameMap.put(fileData.name, fileArrayName);
-      boolean addedDate = this.dateMap.put(fileData.lastModifiedDate, filedArrayDate);
+         // Attempts to add a new (key, value) to each map.
+         boolean addedName = this.nameMap.put(fileData.name, fileArrayName);
+         boolean addedDate = this.dateMap.put(fileData.lastModifiedDate, filedArrayDate);
 
-      // If put returns false, then map has an existing key and FileData will be added
-      // to the key's ArrayList
-      if (!addedName) {
-         this.nameMap.get(fileData.name).add(fileData);
-         addedName = true;
-      }
+         // If put returns false, then map has an existing key and FileData will be added
+         // to the key's ArrayList
+         if (!addedName) {
+            insert(this.nameMap.get(fileData.name), fileData, BY_DIR);
+            addedName = true;
+         }
+
+         if (!addedDate) {
+            insert(this.dateMap.get(fileData.lastModifiedDate), fileData,
+                  BY_NAME_AND_DIR);
+            addedDate = true;
+         }
+         this.addToIndexes(fileData, this.nameMap.get(fileData.name).size() == 1);
+         this.growFilters();
 
-      if (!addedDate) {
-         this.dateMap.get(fileData.lastModifiedDate).add(fileData);
-         addedDate = true;
+         // a second file with the name adds the first one to findFilesInMultDir
+         this.invalidate(fileData, this.nameMap.get(fileData.name).size() == 2);
+         return (addedName && addedDate);
+      }
+      finally {
+         this.lock.writeLock().unlock();
       }
-      return (addedName && addedDate);
    }
 
    /**
@@ -92,19 +179,41 @@ public class FileSystem {
     * @return The FileData object, null if not found
     */
    public FileData findFile(String name, String directory) {
-      if (name == null || directory == null) {
-         return null;
+      MetricsListener listener = this.listener;
+      if (listener == null) {
+         return this.lookupFile(name, directory);
       }
 
-      if (this.nameMap.containsKey(name)) {
-         for (FileData f : this.nameMap.get(name)) {
-            if (f.dir.equals(directory)) {
-               return f;
-            }
+      long start = System.nanoTime();
+      FileData found = this.lookupFile(name, directory);
+      listener.operation(OP_FIND_FILE, System.nanoTime() - start);
+      return found;
+   }
+
+   /**
+    * Finds a file without recording its latency
+    * 
+    * @see #findFile(String, String)
+    */
+   private FileData lookupFile(String name, String directory) {
+      this.lock.readLock().lock();
+      try {
+         if (name == null || directory == null || !this.mayContain(name, directory)) {
+            return null;
          }
-      }
 
-      return null;
+         ArrayList<FileData> postings = this.nameMap.get(name);
+         if (postings != null) {
+            FileData probe = new FileData(name, directory, null);
+            int i = Collections.binarySearch(postings, probe, BY_DIR);
+            return i < 0 ? null : postings.get(i);
+         }
+
+         return null;
+      }
+      finally {
+         this.lock.readLock().unlock();
+      }
    }
 
    /**
@@ -113,7 +222,13 @@ public class FileSystem {
     * @return Array List with the keys
     */
    public ArrayList<String> findAllFilesName() {
-      return (ArrayList<String>) nameMap.keys();
+      this.lock.readLock().lock();
+      try {
+         return (ArrayList<String>) nameMap.keys();
+      }
+      finally {
+         this.lock.readLock().unlock();
+      }
    }
 
    /**
@@ -122,13 +237,36 @@ public class FileSystem {
     * @param name The name to be searched
     * @return ArrayList with FileData object for each file
     */
-   @SuppressWarnings("unchecked")
    public ArrayList<FileData> findFilesByName(String name) {
-      if (this.nameMap.containsKey(name)) {
-         return (ArrayList<FileData>) this.nameMap.get(name).clone();
+      MetricsListener listener = this.listener;
+      if (listener == null) {
+         return this.filesByName(name);
       }
 
-      return new ArrayList<FileData>();
+      long start = System.nanoTime();
+      ArrayList<FileData> files = this.filesByName(name);
+      listener.operation(OP_FIND_BY_NAME, System.nanoTime() - start);
+      return files;
+   }
+
+   /**
+    * Finds all files with the same name without recording the latency
+    * 
+    * @see #findFilesByName(String)
+    */
+   @SuppressWarnings("unchecked")
+   private ArrayList<FileData> filesByName(String name) {
+      this.lock.readLock().lock();
+      try {
+         if (this.mayContain(name) && this.nameMap.containsKey(name)) {
+            return (ArrayList<FileData>) this.nameMap.get(name).clone();
+         }
+
+         return new ArrayList<FileData>();
+      }
+      finally {
+         this.lock.readLock().unlock();
+      }
    }
 
    /**
@@ -137,13 +275,135 @@ public class FileSystem {
     * @param date The date to be searched
     * @return ArrayList with FileData object for each file
     */
-   @SuppressWarnings("unchecked")
    public ArrayList<FileData> findFilesByDate(String modifiedDate) {
-      if (this.dateMap.containsKey(modifiedDate)) {
-         return (ArrayList<FileData>) this.dateMap.get(modifiedDate).clone();
+      return this.cached(QUERY_BY_DATE, modifiedDate, this::filesByDate);
+   }
+
+   /**
+    * Finds all files with the same last modified date without the cache
+    * 
+    * @see #findFilesByDate(String)
+    */
+   @SuppressWarnings("unchecked")
+   private ArrayList<FileData> filesByDate(String modifiedDate) {
+      this.lock.readLock().lock();
+      try {
+         if (this.dateMap.containsKey(modifiedDate)) {
+            return (ArrayList<FileData>) this.dateMap.get(modifiedDate).clone();
+         }
+
+         return new ArrayList<FileData>();
+      }
+      finally {
+         this.lock.readLock().unlock();
       }
+   }
+
+   /**
+    * Streams the files with the same name, sorted by directory, without copying them.
+    * Use FileCursor.byName to read them one page at a time. The list is looked up under
+    * the read lock, but the stream is lazy and must be consumed before the file system
+    * is modified
+    * 
+    * @param name The name to be searched
+    * @return Stream with the FileData object for each file
+    */
+   public Stream<FileData> streamFilesByName(String name) {
+      return streamOf(name == null ? null : this.postings(this.nameMap, name));
+   }
+
+   /**
+    * Streams the files with the same last modified date, sorted by name and directory,
+    * without copying them. Use FileCursor.byDate to read them one page at a time. The
+    * list is looked up under the read lock, but the stream is lazy and must be consumed
+    * before the file system is modified
+    * 
+    * @param modifiedDate The date to be searched
+    * @return Stream with the FileData object for each file
+    */
+   public Stream<FileData> streamFilesByDate(String modifiedDate) {
+      return streamOf(modifiedDate == null ? null
+            : this.postings(this.dateMap, modifiedDate));
+   }
 
-      return new ArrayList<FileData>();
+   /**
+    * Streams every file in the file system, grouped by name, straight from the buckets
+    * of the nameMap, so nothing is copied. The stream is lazy and must be consumed
+    * before the file system is modified. Use a FileCursor to read all the files one
+    * page at a time
+    * 
+    * @return Stream with all the FileData objects
+    */
+   public Stream<FileData> streamAll() {
+      return this.nameMap.streamValues().flatMap(ArrayList::stream);
+   }
+
+   /**
+    * Looks up the files of a key under the read lock
+    * 
+    * @param map The name or date map
+    * @param key The key to be searched
+    * @return the files of the key, null if the key is not in the map
+    */
+   private ArrayList<FileData> postings(MyHashMap<String, ArrayList<FileData>> map,
+         String key) {
+      this.lock.readLock().lock();
+      try {
+         return map.get(key);
+      }
+      finally {
+         this.lock.readLock().unlock();
+      }
+   }
+
+   private static Stream<FileData> streamOf(ArrayList<FileData> files) {
+      return files == null ? Stream.empty() : files.stream();
+   }
+
+   /**
+    * Starts a composite query over this file system
+    * 
+    * @return a FileQuery without conditions
+    */
+   public FileQuery query() {
+      return new FileQuery(this);
+   }
+
+   /**
+    * Returns the number of files with the specified name
+    * 
+    * @param name The name key
+    * @return the length of the name postings, 0 if the name is not in the map
+    */
+   public int nameCardinality(String name) {
+      this.lock.readLock().lock();
+      try {
+         if (name == null || !this.mayContain(name)) {
+            return 0;
+         }
+         ArrayList<FileData> files = this.nameMap.get(name);
+         return files == null ? 0 : files.size();
+      }
+      finally {
+         this.lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Returns the number of files with the specified last modified date
+    * 
+    * @param modifiedDate The date key
+    * @return the length of the date postings, 0 if the date is not in the map
+    */
+   public int dateCardinality(String modifiedDate) {
+      this.lock.readLock().lock();
+      try {
+         ArrayList<FileData> files = this.dateMap.get(modifiedDate);
+         return files == null ? 0 : files.size();
+      }
+      finally {
+         this.lock.readLock().unlock();
+      }
    }
 
    /**
@@ -154,18 +414,268 @@ public class FileSystem {
     * @return A list of FileData objects with the same name and date
     */
    public ArrayList<FileData> findFilesInMultDir(String modifiedDate) {
-      ArrayList<FileData> files = new ArrayList<FileData>();
+      return this.cached(QUERY_MULT_DIR, modifiedDate, this::filesInMultDir);
+   }
+
+   /**
+    * Finds the files of a date whose name is in several directories without the cache.
+    * Only the length of each name list is read, no list is copied
+    * 
+    * @see #findFilesInMultDir(String)
+    */
+   private ArrayList<FileData> filesInMultDir(String modifiedDate) {
+      this.lock.readLock().lock();
+      try {
+         ArrayList<FileData> files = new ArrayList<FileData>();
 
-      if (this.findFilesByDate(modifiedDate) != null) {
-         for (FileData f : this.findFilesByDate(modifiedDate)) {
-            if (this.findFilesByName(f.name) != null
-                  && this.findFilesByName(f.name).size() > 1) {
-               files.add(f);
+         ArrayList<FileData> dated = this.dateMap.get(modifiedDate);
+         if (dated != null) {
+            for (FileData f : dated) {
+               if (this.nameMap.get(f.name).size() > 1) {
+                  files.add(f);
+               }
             }
          }
+
+         return files;
       }
+      finally {
+         this.lock.readLock().unlock();
+      }
+   }
 
-      return files;
+   /**
+    * Writes a weakly consistent duplicate report, which never holds back changes
+    * 
+    * @param out      The writer of the report
+    * @param fromDate The first date of the range, null for no lower bound
+    * @param toDate   The last date of the range, null for no upper bound
+    * @return the number of names written
+    * @throws IOException              if the writer fails
+    * @throws IllegalArgumentException if a date is malformed
+    * @see #writeDuplicateReport(Writer, String, String, boolean)
+    */
+   public long writeDuplicateReport(Writer out, String fromDate, String toDate)
+         throws IOException, IllegalArgumentException {
+      return this.writeDuplicateReport(out, fromDate, toDate, false);
+   }
+
+   /**
+    * Writes every name stored in more than one directory, one line per name with the
+    * directory and date of each of its files, separated by tabs:
+    * 
+    * name\tdir\tdate\tdir\tdate...
+    * 
+    * Only files with a date in the range count. The writer is only called by the
+    * calling thread and never while the read lock is held.
+    * 
+    * A weakly consistent report, the default, reads the name index one bucket at a
+    * time under the read lock and writes the lines of a bucket after releasing it, so
+    * changes only wait for a bucket to be read. Names not changed while the report is
+    * written are reported once, changed names with their files before or after the
+    * change.
+    * 
+    * A consistent report is a snapshot: the name index is scanned once in parallel on
+    * a pool of its own under the read lock, and the lines are handed to the calling
+    * thread through a queue of REPORT_QUEUE_SIZE lines. Changes wait until the last
+    * line is queued, and queries that come after a waiting change wait too, so with a
+    * writer slower than the scan the whole file system waits for most of the report to
+    * be written
+    * 
+    * @param out        The writer of the report
+    * @param fromDate   The first date of the range, null for no lower bound
+    * @param toDate     The last date of the range, null for no upper bound
+    * @param consistent true for a snapshot of the file system, false for a weakly
+    *                   consistent report that does not hold changes back
+    * @return the number of names written
+    * @throws IOException              if the writer fails
+    * @throws IllegalArgumentException if a date is malformed
+    */
+   public long writeDuplicateReport(Writer out, String fromDate, String toDate,
+         boolean consistent) throws IOException, IllegalArgumentException {
+      int from = fromDate == null ? 0 : FileQuery.toSortableDate(fromDate);
+      int to = toDate == null ? Integer.MAX_VALUE : FileQuery.toSortableDate(toDate);
+      if (from < 0 || to < 0) {
+         throw new IllegalArgumentException("Dates must be in MM/dd/yyyy format");
+      }
+      Function<ArrayList<FileData>, String> lineOf = fromDate == null && toDate == null
+            ? postings -> duplicateLine(postings, 0, Integer.MAX_VALUE, true)
+            : postings -> duplicateLine(postings, from, to, false);
+
+      return consistent ? this.writeSnapshotReport(out, lineOf)
+            : this.writeWeakReport(out, lineOf);
+   }
+
+   /**
+    * Scans the name index under the read lock on a pool of its own, so the threads
+    * waiting for the queue are not taken from the common pool, and writes the lines it
+    * queues
+    * 
+    * @param out    The writer of the report
+    * @param lineOf Builds the line of a name, null if it is not reported
+    * @return the number of names written
+    * @throws IOException if the writer fails or the calling thread is interrupted
+    */
+   private long writeSnapshotReport(Writer out,
+         Function<ArrayList<FileData>, String> lineOf) throws IOException {
+      BlockingQueue<String> lines = new ArrayBlockingQueue<String>(REPORT_QUEUE_SIZE);
+      // stops the scan once the calling thread no longer takes lines
+      AtomicBoolean cancelled = new AtomicBoolean();
+
+      // the parallel stream runs on the pool it is started from
+      ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      ForkJoinTask<?> scan = pool.submit(() -> {
+         try {
+            this.lock.readLock().lock();
+            try {
+               this.nameMap.streamValues().parallel().map(lineOf)
+                     .filter(line -> line != null)
+                     .forEach(line -> queue(lines, line, cancelled));
+            }
+            finally {
+               this.lock.readLock().unlock();
+            }
+         }
+         finally {
+            queue(lines, END_OF_REPORT, cancelled);
+         }
+      });
+
+      long written = 0;
+      try {
+         String line;
+         while ((line = lines.take()) != END_OF_REPORT) {
+            out.write(line);
+            written++;
+         }
+      }
+      catch (InterruptedException e) {
+         cancelled.set(true);
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while writing the report", e);
+      }
+      catch (IOException | RuntimeException e) {
+         cancelled.set(true);
+         throw e;
+      }
+      finally {
+         pool.shutdown();
+      }
+
+      // rethrows the failure of the scan
+      scan.join();
+      return written;
+   }
+
+   /**
+    * Puts a line of the report in the queue, waiting while the queue is full unless
+    * the report is cancelled
+    * 
+    * @param lines     The queue of lines
+    * @param line      The line
+    * @param cancelled true once the lines are no longer taken
+    */
+   private static void queue(BlockingQueue<String> lines, String line,
+         AtomicBoolean cancelled) {
+      try {
+         while (!cancelled.get() && !lines.offer(line, 10, TimeUnit.MILLISECONDS)) {
+            // the calling thread is still writing
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while queueing the report", e);
+      }
+   }
+
+   /**
+    * Reads the name index one bucket at a time under the read lock and writes the lines
+    * of each bucket after releasing it. Capacity only doubles, so the buckets of the
+    * capacity at the start still cover every name
+    * 
+    * @param out    The writer of the report
+    * @param lineOf Builds the line of a name, null if it is not reported
+    * @return the number of names written
+    * @throws IOException if the writer fails
+    */
+   private long writeWeakReport(Writer out, Function<ArrayList<FileData>, String> lineOf)
+         throws IOException {
+      int capacity;
+      this.lock.readLock().lock();
+      try {
+         capacity = this.nameMap.capacity();
+      }
+      finally {
+         this.lock.readLock().unlock();
+      }
+
+      long written = 0;
+      List<String> lines = new ArrayList<String>();
+      for (int bucket = 0; bucket < capacity; bucket++) {
+         this.lock.readLock().lock();
+         try {
+            for (String name : this.nameMap.keysInBucket(bucket, capacity)) {
+               String line = lineOf.apply(this.nameMap.get(name));
+               if (line != null) {
+                  lines.add(line);
+               }
+            }
+         }
+         finally {
+            this.lock.readLock().unlock();
+         }
+
+         for (String line : lines) {
+            out.write(line);
+         }
+         written += lines.size();
+         lines.clear();
+      }
+      return written;
+   }
+
+   /**
+    * Builds the line of a name for the duplicate report if more than one of its files
+    * have a date in the range
+    * 
+    * @param postings The files with the name
+    * @param from     The first date of the range as yyyyMMdd
+    * @param to       The last date of the range as yyyyMMdd
+    * @param allDates true if every date is in the range
+    * @return the line, null if the name is not reported
+    */
+   private static String duplicateLine(ArrayList<FileData> postings, int from, int to,
+         boolean allDates) {
+      int count = 0;
+      for (FileData f : postings) {
+         if (allDates || inRange(f, from, to)) {
+            count++;
+         }
+      }
+      if (count < 2) {
+         return null;
+      }
+
+      StringBuilder line = new StringBuilder(postings.get(0).name);
+      for (FileData f : postings) {
+         if (allDates || inRange(f, from, to)) {
+            line.append('\t').append(f.dir).append('\t').append(f.lastModifiedDate);
+         }
+      }
+      return line.append('\n').toString();
+   }
+
+   /**
+    * Checks if the date of a file is in a range
+    * 
+    * @param f    The file
+    * @param from The first date of the range as yyyyMMdd
+    * @param to   The last date of the range as yyyyMMdd
+    * @return true if the date is in the range, false if it is malformed
+    */
+   private static boolean inRange(FileData f, int from, int to) {
+      int date = FileQuery.toSortableDate(f.lastModifiedDate);
+      return date >= 0 && date >= from && date <= to;
    }
 
    /**
@@ -175,21 +685,31 @@ public class FileSystem {
     * @return true if the file was successfully removed
     */
    public boolean removeByName(String name) {
-      if (name == null || !this.nameMap.containsKey(name)) {
-         return false;
-      }
+      this.lock.writeLock().lock();
+      try {
+         if (name == null || !this.mayContain(name) || !this.nameMap.containsKey(name)) {
+            return false;
+         }
 
-      // Search and remove files in the dateMap
-      for (FileData f : this.nameMap.get(name)) {
-         this.dateMap.get(f.lastModifiedDate).remove(f);
-         this.checkEmptyKeys(name, f.lastModifiedDate);
-      }
+         // Search and remove files in the dateMap
+         boolean nameRemoved = true;
+         for (FileData f : this.nameMap.get(name)) {
+            this.removeFromIndexes(f, nameRemoved);
+            nameRemoved = false;
+            this.invalidate(f, false);
+            this.dateMap.get(f.lastModifiedDate).remove(f);
+            this.checkEmptyKeys(name, f.lastModifiedDate);
+         }
 
-      // Remove key from nameMap (removes all values)
-      this.nameMap.remove(name);
+         // Remove key from nameMap (removes all values)
+         this.nameMap.remove(name);
 
-      this.checkEmptyKeys(name, null);
-      return true;
+         this.checkEmptyKeys(name, null);
+         return true;
+      }
+      finally {
+         this.lock.writeLock().unlock();
+      }
    }
 
    /**
@@ -200,17 +720,617 @@ public class FileSystem {
     * @return true if the file was successful removed
     */
    public boolean removeFile(String name, String directory) {
+      MetricsListener listener = this.listener;
+      if (listener == null) {
+         return this.deleteFile(name, directory);
+      }
+
+      long start = System.nanoTime();
+      boolean removed = this.deleteFile(name, directory);
+      listener.operation(OP_REMOVE_FILE, System.nanoTime() - start);
+      return removed;
+   }
+
+   /**
+    * Removes a file without recording its latency
+    * 
+    * @see #removeFile(String, String)
+    */
+   private boolean deleteFile(String name, String directory) {
+      this.lock.writeLock().lock();
+      try {
+         FileData fileToRemove = this.lookupFile(name, directory);
+         if (fileToRemove == null) {
+            return false;
+         }
+
+         this.nameMap.get(name).remove(fileToRemove);
+         this.dateMap.get(fileToRemove.lastModifiedDate).remove(fileToRemove);
+
+         this.checkEmptyKeys(name, fileToRemove.lastModifiedDate);
+         this.removeFromIndexes(fileToRemove, !this.nameMap.containsKey(name));
+
+         // a single file left with the name drops out of findFilesInMultDir
+         this.invalidate(fileToRemove, this.nameCardinality(name) == 1);
+         return true;
+      }
+      finally {
+         this.lock.writeLock().unlock();
+      }
+   }
 
-      if (name == null || directory == null || !this.nameMap.containsKey(name)) {
-         return false;
+   /**
+    * Applies the operations of a batch with the same result as calling add and
+    * removeFile in order. Operations are grouped by file, so a file added and removed
+    * in the same batch never reaches the maps, and each name and date list is updated
+    * once. Readers see either none or all of the batch
+    * 
+    * @param batch The operations to apply
+    * @return the number of files added plus the number of files removed
+    */
+   public int apply(Batch batch) {
+      // groups the operations by name, keeping their order
+      LinkedHashMap<String, ArrayList<Batch.Operation>> byName = new LinkedHashMap<>();
+      for (Batch.Operation op : batch.operations) {
+         byName.computeIfAbsent(op.name, k -> new ArrayList<>()).add(op);
+      }
+
+      this.lock.writeLock().lock();
+      try {
+         ArrayList<FileData> removed = new ArrayList<FileData>();
+         ArrayList<FileData> added = new ArrayList<FileData>();
+         HashMap<String, Integer> sizes = new HashMap<String, Integer>();
+
+         for (Map.Entry<String, ArrayList<Batch.Operation>> name : byName.entrySet()) {
+            // long postings are indexed by directory, short ones are scanned
+            ArrayList<FileData> postings = this.mayContain(name.getKey())
+                  ? this.nameMap.get(name.getKey()) : null;
+            HashMap<String, FileData> existing = null;
+            if (postings != null && postings.size() > BATCH_SCAN_THRESHOLD) {
+               existing = filesByDir(postings);
+            }
+            sizes.put(name.getKey(), postings == null ? 0 : postings.size());
+
+            // groups the operations of the name by directory
+            LinkedHashMap<String, ArrayList<Batch.Operation>> byDir;
+            byDir = new LinkedHashMap<>();
+            for (Batch.Operation op : name.getValue()) {
+               byDir.computeIfAbsent(op.dir, k -> new ArrayList<>()).add(op);
+            }
+
+            for (Map.Entry<String, ArrayList<Batch.Operation>> dir : byDir.entrySet()) {
+               // replays the operations of one file to find its final state
+               FileData initial = existing != null ? existing.get(dir.getKey())
+                     : findIn(postings, dir.getKey());
+               boolean present = initial != null;
+               boolean changed = false;
+               String date = null;
+
+               for (Batch.Operation op : dir.getValue()) {
+                  if (op.add && !present) {
+                     present = true;
+                     changed = true;
+                     date = op.date;
+                  }
+                  else if (!op.add && present) {
+                     present = false;
+                     changed = true;
+                  }
+               }
+
+               if (changed && initial != null) {
+                  removed.add(initial);
+               }
+               if (changed && present) {
+                  added.add(new FileData(name.getKey(), dir.getKey(), date));
+               }
+            }
+         }
+
+         this.removeAll(removed);
+         this.addAll(added);
+         this.invalidateAll(removed, added, sizes);
+         return removed.size() + added.size();
+      }
+      finally {
+         this.lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Indexes files with the same name by directory
+    * 
+    * @param postings The files with the same name
+    * @return map from directory to file
+    */
+   private static HashMap<String, FileData> filesByDir(ArrayList<FileData> postings) {
+      HashMap<String, FileData> files = new HashMap<String, FileData>();
+      for (FileData f : postings) {
+         files.put(f.dir, f);
+      }
+      return files;
+   }
+
+   /**
+    * Searches files with the same name for the one in a directory
+    * 
+    * @param postings  The files with the same name, null if there are none
+    * @param directory The directory of the file
+    * @return the file, null if not found
+    */
+   private static FileData findIn(ArrayList<FileData> postings, String directory) {
+      if (postings != null) {
+         for (FileData f : postings) {
+            if (f.dir.equals(directory)) {
+               return f;
+            }
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Removes files from both maps, going through each name and date list once
+    * 
+    * @param files The files to remove, all present in the maps
+    */
+   private void removeAll(ArrayList<FileData> files) {
+      HashMap<String, Set<FileData>> byName = new HashMap<>();
+      HashMap<String, Set<FileData>> byDate = new HashMap<>();
+      for (FileData f : files) {
+         byName.computeIfAbsent(f.name, k -> newIdentitySet()).add(f);
+         byDate.computeIfAbsent(f.lastModifiedDate, k -> newIdentitySet()).add(f);
+      }
+
+      for (Map.Entry<String, Set<FileData>> e : byName.entrySet()) {
+         removeFrom(this.nameMap.get(e.getKey()), e.getValue());
+         this.checkEmptyKeys(e.getKey(), null);
+
+         boolean nameRemoved = !this.nameMap.containsKey(e.getKey());
+         for (FileData f : e.getValue()) {
+            this.removeFromIndexes(f, nameRemoved);
+            nameRemoved = false;
+         }
+      }
+      for (Map.Entry<String, Set<FileData>> e : byDate.entrySet()) {
+         removeFrom(this.dateMap.get(e.getKey()), e.getValue());
+         this.checkEmptyKeys(null, e.getKey());
+      }
+   }
+
+   /**
+    * Removes files from a list. A few files are removed one by one, which only compares
+    * references, many files are removed in a single pass over the list
+    * 
+    * @param list  The list of files
+    * @param files The files to remove
+    */
+   private static void removeFrom(ArrayList<FileData> list, Set<FileData> files) {
+      if (files.size() <= BATCH_SCAN_THRESHOLD) {
+         for (FileData f : files) {
+            list.remove(f);
+         }
+      }
+      else {
+         list.removeIf(files::contains);
+      }
+   }
+
+   /**
+    * Adds files to both maps, appending to each name and date list once
+    * 
+    * @param files The files to add, none present in the maps
+    */
+   private void addAll(ArrayList<FileData> files) {
+      HashMap<String, ArrayList<FileData>> byName = new HashMap<>();
+      HashMap<String, ArrayList<FileData>> byDate = new HashMap<>();
+      for (FileData f : files) {
+         byName.computeIfAbsent(f.name, k -> new ArrayList<>()).add(f);
+         byDate.computeIfAbsent(f.lastModifiedDate, k -> new ArrayList<>()).add(f);
+      }
+
+      for (Map.Entry<String, ArrayList<FileData>> e : byName.entrySet()) {
+         e.getValue().sort(BY_DIR);
+         boolean nameAdded = this.nameMap.put(e.getKey(), e.getValue());
+         if (!nameAdded) {
+            merge(this.nameMap.get(e.getKey()), e.getValue(), BY_DIR);
+         }
+
+         for (FileData f : e.getValue()) {
+            this.addToIndexes(f, nameAdded);
+            nameAdded = false;
+         }
+      }
+      this.growFilters();
+      for (Map.Entry<String, ArrayList<FileData>> e : byDate.entrySet()) {
+         e.getValue().sort(BY_NAME_AND_DIR);
+         if (!this.dateMap.put(e.getKey(), e.getValue())) {
+            merge(this.dateMap.get(e.getKey()), e.getValue(), BY_NAME_AND_DIR);
+         }
+      }
+   }
+
+   /**
+    * Inserts a file in a sorted list
+    * 
+    * @param list  The list, sorted in order
+    * @param f     The file, not in the list
+    * @param order The order of the list
+    */
+   private static void insert(ArrayList<FileData> list, FileData f,
+         Comparator<FileData> order) {
+      int i = Collections.binarySearch(list, f, order);
+      list.add(i < 0 ? -i - 1 : i, f);
+   }
+
+   /**
+    * Merges files into a sorted list. A few files are inserted one by one, many files
+    * are merged in a single pass over the list
+    * 
+    * @param list  The list, sorted in order
+    * @param files The files, sorted in order and none in the list
+    * @param order The order of both lists
+    */
+   private static void merge(ArrayList<FileData> list, ArrayList<FileData> files,
+         Comparator<FileData> order) {
+      if (files.size() <= BATCH_SCAN_THRESHOLD) {
+         for (FileData f : files) {
+            insert(list, f, order);
+         }
+         return;
+      }
+
+      ArrayList<FileData> merged = new ArrayList<FileData>(list.size() + files.size());
+      int i = 0;
+      int j = 0;
+      while (i < list.size() || j < files.size()) {
+         if (j == files.size()
+               || (i < list.size() && order.compare(list.get(i), files.get(j)) < 0)) {
+            merged.add(list.get(i++));
+         }
+         else {
+            merged.add(files.get(j++));
+         }
+      }
+      // the maps hold the list, so it is refilled instead of replaced
+      list.clear();
+      list.addAll(merged);
+   }
+
+   /**
+    * Marks the cached results a batch can alter as stale
+    * 
+    * @param removed The files removed by the batch
+    * @param added   The files added by the batch
+    * @param sizes   The number of files of each name of the batch before it was applied
+    */
+   private void invalidateAll(ArrayList<FileData> removed, ArrayList<FileData> added,
+         HashMap<String, Integer> sizes) {
+      if (this.cache == null) {
+         return;
+      }
+
+      for (FileData f : removed) {
+         this.invalidate(f, false);
+      }
+      for (FileData f : added) {
+         this.invalidate(f, false);
+      }
+      // names that went from one file to several, or back, change findFilesInMultDir
+      for (Map.Entry<String, Integer> e : sizes.entrySet()) {
+         ArrayList<FileData> postings = this.nameMap.get(e.getKey());
+         int size = postings == null ? 0 : postings.size();
+         if (postings != null && (size > 1) != (e.getValue() > 1)) {
+            this.invalidate(postings.get(0), true);
+         }
+      }
+   }
+
+   /**
+    * Marks the cached results of the date of a changed file as stale. Must be called
+    * with the write lock held
+    * 
+    * @param f           The file added or removed
+    * @param nameChanged true if the change made the name shared or single, so the
+    *                    results of every date with the name are stale too
+    */
+   private void invalidate(FileData f, boolean nameChanged) {
+      QueryCache cache = this.cache;
+      if (cache == null) {
+         return;
+      }
+
+      cache.invalidate(f.lastModifiedDate);
+      ArrayList<FileData> postings = this.nameMap.get(f.name);
+      if (nameChanged && postings != null) {
+         for (FileData g : postings) {
+            cache.invalidate(g.lastModifiedDate);
+         }
+      }
+   }
+
+   /**
+    * Answers a date query from the cache, or runs it and caches its result. A cached
+    * result costs a hash lookup and a copy, without the read lock
+    * 
+    * @param kind         The prefix of the query in the cache
+    * @param modifiedDate The date to be searched
+    * @param query        Runs the query without the cache
+    * @return a copy of the result the caller may modify
+    */
+   @SuppressWarnings("unchecked")
+   private ArrayList<FileData> cached(String kind, String modifiedDate,
+         Function<String, ArrayList<FileData>> query) {
+      QueryCache cache = this.cache;
+      if (cache == null || modifiedDate == null) {
+         return query.apply(modifiedDate);
+      }
+
+      String key = kind + modifiedDate;
+      ArrayList<FileData> result = cache.get(key, modifiedDate);
+      if (result == null) {
+         // writers cannot change the date between its stamp and the result
+         this.lock.readLock().lock();
+         try {
+            long version = cache.version(modifiedDate);
+            result = query.apply(modifiedDate);
+            cache.put(key, modifiedDate, version, result);
+         }
+         finally {
+            this.lock.readLock().unlock();
+         }
+      }
+      return (ArrayList<FileData>) result.clone();
+   }
+
+   /**
+    * Enables a cache of the results of findFilesByDate and findFilesInMultDir. Results
+    * are kept until a change to the file system can alter them, and the least recently
+    * used ones are evicted over the size limit
+    * 
+    * @param maxBytes The maximum estimated size of the cached results
+    * @throws IllegalArgumentException if maxBytes is not positive
+    */
+   public void enableQueryCache(long maxBytes) throws IllegalArgumentException {
+      QueryCache cache = new QueryCache(maxBytes);
+      this.lock.writeLock().lock();
+      try {
+         this.cache = cache;
+      }
+      finally {
+         this.lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Disables the query cache and drops its results
+    */
+   public void disableQueryCache() {
+      this.lock.writeLock().lock();
+      try {
+         this.cache = null;
+      }
+      finally {
+         this.lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * @return the query cache with its hit and miss counts, null if it is disabled
+    */
+   public QueryCache getQueryCache() {
+      return this.cache;
+   }
+
+   /**
+    * Checks the Bloom filter for a file. Must be called with the lock held
+    * 
+    * @param name      The name of the file
+    * @param directory The directory of the file
+    * @return false if the file is definitely not in the maps
+    */
+   private boolean mayContain(String name, String directory) {
+      return this.fileFilter == null
+            || this.fileFilter.mightContain(CountingBloomFilter.hash(name, directory));
+   }
+
+   /**
+    * Checks the Bloom filter for a name. Must be called with the lock held
+    * 
+    * @param name The name key
+    * @return false if the name is definitely not in the nameMap
+    */
+   private boolean mayContain(String name) {
+      return this.nameFilter == null || name == null
+            || this.nameFilter.mightContain(CountingBloomFilter.hash(name));
+   }
+
+   /**
+    * Adds a file to the Bloom filters and the directory tree that are enabled. Must be
+    * called with the write lock held
+    * 
+    * @param f         The file added to the maps
+    * @param nameAdded true if the name of the file is a new key
+    */
+   private void addToIndexes(FileData f, boolean nameAdded) {
+      if (this.directories != null) {
+         this.directories.add(f);
       }
+      if (this.fileFilter == null) {
+         return;
+      }
+
+      this.fileFilter.add(CountingBloomFilter.hash(f.name, f.dir));
+      if (nameAdded) {
+         this.nameFilter.add(CountingBloomFilter.hash(f.name));
+      }
+   }
+
+   /**
+    * Rebuilds the Bloom filters twice as large once they hold more files than they
+    * were sized for. Must be called with the write lock held, after the maps and the
+    * filters are updated
+    */
+   private void growFilters() {
+      if (this.fileFilter != null && this.fileFilter.isFull()) {
+         this.buildFilters(2 * this.fileFilter.size(), this.filterFpp);
+      }
+   }
 
-      FileData fileToRemove = this.findFile(name, directory);
-      this.nameMap.get(name).remove(fileToRemove);
-      this.dateMap.get(fileToRemove.lastModifiedDate).remove(fileToRemove);
+   /**
+    * Removes a file from the Bloom filters and the directory tree that are enabled.
+    * Must be called with the write lock held
+    * 
+    * @param f           The file removed from the maps
+    * @param nameRemoved true if the name of the file is no longer a key
+    */
+   private void removeFromIndexes(FileData f, boolean nameRemoved) {
+      if (this.directories != null) {
+         this.directories.remove(f);
+      }
+      if (this.fileFilter == null) {
+         return;
+      }
 
-      this.checkEmptyKeys(name, fileToRemove.lastModifiedDate);
-      return true;
+      this.fileFilter.remove(CountingBloomFilter.hash(f.name, f.dir));
+      if (nameRemoved) {
+         this.nameFilter.remove(CountingBloomFilter.hash(f.name));
+      }
+   }
+
+   /**
+    * Builds the Bloom filters from the files in the maps. Must be called with the write
+    * lock held
+    * 
+    * @param expected The number of files the filters are sized for
+    * @param fpp      The false positive rate at the expected number of files
+    */
+   private void buildFilters(int expected, double fpp) {
+      CountingBloomFilter files = new CountingBloomFilter(expected, fpp);
+      CountingBloomFilter names = new CountingBloomFilter(expected, fpp);
+      for (String name : this.nameMap.keys()) {
+         names.add(CountingBloomFilter.hash(name));
+         for (FileData f : this.nameMap.get(name)) {
+            files.add(CountingBloomFilter.hash(f.name, f.dir));
+         }
+      }
+
+      this.fileFilter = files;
+      this.nameFilter = names;
+      this.filterFpp = fpp;
+   }
+
+   /**
+    * Enables Bloom filters over the files and names, so findFile, the duplicate check
+    * of add and the name lookups answer most misses without the maps. The filters are
+    * built from the current files and grow when they hold more than expected
+    * 
+    * @param expected The number of files the filters are sized for
+    * @param fpp      The false positive rate at the expected number of files
+    * @throws IllegalArgumentException if expected is not positive or fpp is not
+    *                                  between 0 and 1
+    */
+   public void enableBloomFilter(int expected, double fpp)
+         throws IllegalArgumentException {
+      this.lock.writeLock().lock();
+      try {
+         this.buildFilters(expected, fpp);
+         this.growFilters();
+      }
+      finally {
+         this.lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Disables the Bloom filters
+    */
+   public void disableBloomFilter() {
+      this.lock.writeLock().lock();
+      try {
+         this.fileFilter = null;
+         this.nameFilter = null;
+      }
+      finally {
+         this.lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Finds the changes that turn this file system into another one. Both file systems
+    * keep a content hash per directory, so only the directories whose files differ are
+    * compared. The first call enables the directory index of both file systems
+    * 
+    * @see #enableDirectoryIndex()
+    * 
+    * @param other The file system to compare with
+    * @return the files added, removed and modified in other
+    */
+   public CatalogDiff diff(FileSystem other) {
+      if (other == this) {
+         return new CatalogDiff();
+      }
+      this.enableDirectoryIndex();
+      other.enableDirectoryIndex();
+
+      // locks in a fixed order, so two diffs in opposite directions cannot deadlock
+      boolean thisFirst = System.identityHashCode(this) <= System.identityHashCode(other);
+      FileSystem first = thisFirst ? this : other;
+      FileSystem second = thisFirst ? other : this;
+
+      first.lock.readLock().lock();
+      try {
+         second.lock.readLock().lock();
+         try {
+            return this.directories.diff(other.directories);
+         }
+         finally {
+            second.lock.readLock().unlock();
+         }
+      }
+      finally {
+         first.lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Indexes the files by directory, if they are not indexed yet. The index keeps a
+    * content hash per directory for diff, and lets queries with an under condition
+    * read only the files of that directory and its subdirectories. Once enabled, every
+    * change also updates the directories on the path of the file
+    */
+   public void enableDirectoryIndex() {
+      this.lock.writeLock().lock();
+      try {
+         if (this.directories == null) {
+            DirectoryTree tree = new DirectoryTree();
+            for (String name : this.nameMap.keys()) {
+               for (FileData f : this.nameMap.get(name)) {
+                  tree.add(f);
+               }
+            }
+            this.directories = tree;
+         }
+      }
+      finally {
+         this.lock.writeLock().unlock();
+      }
+   }
+
+   private static Set<FileData> newIdentitySet() {
+      return Collections.newSetFromMap(new IdentityHashMap<FileData, Boolean>());
+   }
+
+   /**
+    * Sets the listener that receives the latencies of add, findFile, findFilesByName
+    * and removeFile, and the probe lengths and resizes of both maps
+    * 
+    * @param listener The listener, null to disable metrics
+    */
+   public void setMetricsListener(MetricsListener listener) {
+      this.listener = listener;
+      this.nameMap.setMetricsListener(listener);
+      this.dateMap.setMetricsListener(listener);
    }
 
    /**
@@ -0,0 +1,301 @@
+/**
+ * Populates a file system from a real directory tree. Directories are listed in
+ * parallel on a work-stealing pool, one task per directory, and the files found are
+ * handed in batches to a single inserter thread through a bounded queue, so a slow
+ * index makes the listing wait instead of buffering the whole tree in memory
+ */
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FileSystemCrawler {
+   public static final int DEFAULT_BATCH_SIZE = 1024;
+   public static final int DEFAULT_MAX_PENDING_BATCHES = 64;
+   public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+         .ofPattern("MM/dd/yyyy").withZone(ZoneId.systemDefault());
+   public static final String ILLEGAL_ARG_BATCH = "Batch sizes must be positive";
+
+   // marks the end of the crawl in the queue of batches
+   private static final List<FileData> END = new ArrayList<FileData>(0);
+
+   private FileSystem fs;
+   private int parallelism;
+   private int batchSize;
+   private int maxPendingBatches;
+
+   private BlockingQueue<List<FileData>> pending;
+   // receives the files instead of the queue when the crawl only lists them
+   private List<FileData> listed;
+   private AtomicLong added;
+   private AtomicLong skippedDirectories;
+
+   /**
+    * Constructs a crawler that uses every processor and the default batch sizes
+    *
+    * @param fs The file system that receives the files
+    */
+   public FileSystemCrawler(FileSystem fs) {
+      this(fs, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE,
+            DEFAULT_MAX_PENDING_BATCHES);
+   }
+
+   /**
+    * Constructs a crawler
+    *
+    * @param fs                The file system that receives the files
+    * @param parallelism       The number of threads listing directories
+    * @param batchSize         The number of files handed to the inserter at once
+    * @param maxPendingBatches The number of batches waiting for the inserter before
+    *                          the listing threads block
+    * @throws IllegalArgumentException if a size is not positive
+    */
+   public FileSystemCrawler(FileSystem fs, int parallelism, int batchSize,
+         int maxPendingBatches) throws IllegalArgumentException {
+      if (parallelism <= 0 || batchSize <= 0 || maxPendingBatches <= 0) {
+         throw new IllegalArgumentException(ILLEGAL_ARG_BATCH);
+      }
+
+      this.fs = fs;
+      this.parallelism = parallelism;
+      this.batchSize = batchSize;
+      this.maxPendingBatches = maxPendingBatches;
+   }
+
+   /**
+    * Adds every regular file under a directory to the file system. Files are stored
+    * with the absolute path of their directory and the date of their last
+    * modification. Symbolic links are not followed and unreadable directories are
+    * skipped
+    *
+    * @param root The directory to crawl
+    * @return the number of files added to the file system
+    * @throws IOException if root is not a readable directory
+    */
+   public long crawl(String root) throws IOException {
+      Path start = directory(root);
+
+      this.pending = new ArrayBlockingQueue<List<FileData>>(this.maxPendingBatches);
+      this.added = new AtomicLong();
+      this.skippedDirectories = new AtomicLong();
+
+      Inserter inserter = new Inserter();
+      Thread thread = new Thread(inserter, "crawler-inserter");
+      thread.start();
+
+      ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+      try {
+         pool.invoke(new DirectoryTask(start));
+      }
+      finally {
+         pool.shutdown();
+         this.hand(END);
+      }
+
+      try {
+         thread.join();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while indexing " + root, e);
+      }
+
+      if (inserter.failure != null) {
+         throw inserter.failure;
+      }
+      return this.added.get();
+   }
+
+   /**
+    * Lists every regular file under a directory without adding it to the file system,
+    * so the caller can compare the files with the ones already stored
+    *
+    * @param root The directory to list
+    * @return the files with the absolute path of their directory and their date
+    * @throws IOException if root is not a readable directory
+    * @see #crawl(String)
+    */
+   public List<FileData> list(String root) throws IOException {
+      Path start = directory(root);
+
+      this.listed = new ArrayList<FileData>();
+      this.skippedDirectories = new AtomicLong();
+
+      ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+      try {
+         pool.invoke(new DirectoryTask(start));
+         return this.listed;
+      }
+      finally {
+         pool.shutdown();
+         this.listed = null;
+      }
+   }
+
+   /**
+    * Resolves the directory to crawl
+    *
+    * @param root The path of the directory
+    * @return the absolute normalized path
+    * @throws IOException if root is not a directory
+    */
+   private static Path directory(String root) throws IOException {
+      Path start = Paths.get(root).toAbsolutePath().normalize();
+      if (!Files.isDirectory(start)) {
+         throw new IOException("Not a directory: " + root);
+      }
+      return start;
+   }
+
+   /**
+    * @return the number of directories skipped by the last crawl because they could
+    *         not be listed
+    */
+   public long skippedDirectories() {
+      return this.skippedDirectories == null ? 0 : this.skippedDirectories.get();
+   }
+
+   /**
+    * Formats a modification time as a file system date
+    *
+    * @param time The modification time
+    * @return the date in MM/dd/yyyy format
+    */
+   static String toDate(FileTime time) {
+      return DATE_FORMAT.format(time.toInstant());
+   }
+
+   /**
+    * Puts a batch in the queue, waiting while the queue is full
+    *
+    * @param batch The batch of files
+    */
+   private void hand(List<FileData> batch) {
+      if (this.listed != null) {
+         synchronized (this.listed) {
+            this.listed.addAll(batch);
+         }
+         return;
+      }
+
+      try {
+         this.pending.put(batch);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while queueing files", e);
+      }
+   }
+
+   /**
+    * Lists one directory, forks a task for each subdirectory and hands its files to
+    * the inserter
+    */
+   private class DirectoryTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private Path dir;
+
+      private DirectoryTask(Path dir) {
+         this.dir = dir;
+      }
+
+      @Override
+      protected void compute() {
+         List<DirectoryTask> subdirectories = new ArrayList<DirectoryTask>();
+         List<FileData> batch = new ArrayList<FileData>();
+         String directory = this.dir.toString();
+
+         try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.dir)) {
+            for (Path entry : entries) {
+               BasicFileAttributes attributes;
+               try {
+                  attributes = Files.readAttributes(entry, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+               }
+               catch (IOException e) {
+                  continue; // removed while listing
+               }
+
+               if (attributes.isDirectory()) {
+                  DirectoryTask task = new DirectoryTask(entry);
+                  task.fork();
+                  subdirectories.add(task);
+               }
+               else if (attributes.isRegularFile()) {
+                  batch.add(new FileData(entry.getFileName().toString(), directory,
+                        toDate(attributes.lastModifiedTime())));
+                  if (batch.size() == FileSystemCrawler.this.batchSize) {
+                     hand(batch);
+                     batch = new ArrayList<FileData>();
+                  }
+               }
+            }
+         }
+         catch (IOException | DirectoryIteratorException e) {
+            // errors while iterating are unchecked, the files listed so far are kept
+            skippedDirectories.incrementAndGet();
+         }
+
+         if (!batch.isEmpty()) {
+            hand(batch);
+         }
+         for (DirectoryTask task : subdirectories) {
+            task.join();
+         }
+      }
+   }
+
+   /**
+    * Adds the batches of the queue to the file system until the end of the crawl
+    */
+   private class Inserter implements Runnable {
+      private IOException failure;
+
+      @Override
+      public void run() {
+         try {
+            List<FileData> batch;
+            while ((batch = pending.take()) != END) {
+               // after a failure the queue is still drained so the listing threads
+               // never block on it
+               if (this.failure == null) {
+                  this.insert(batch);
+               }
+            }
+         }
+         catch (InterruptedException e) {
+            this.failure = new IOException("Inserter interrupted", e);
+         }
+      }
+
+      private void insert(List<FileData> files) {
+         Batch batch = new Batch();
+         for (FileData f : files) {
+            batch.add(f.name, f.dir, f.lastModifiedDate);
+         }
+
+         try {
+            added.addAndGet(fs.apply(batch));
+         }
+         catch (RuntimeException e) {
+            this.failure = new IOException("Cannot add files", e);
+         }
+      }
+   }
+}
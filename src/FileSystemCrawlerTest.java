@@ -0,0 +1,78 @@
+/**
+ * Unit testing for the crawler that populates a file system from disk
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class FileSystemCrawlerTest {
+
+   private Path root;
+   private FileSystem fs;
+
+   // Creates a small directory tree with files in several levels
+   @Before
+   public void createTree() throws IOException {
+      root = Files.createTempDirectory("crawler").toRealPath();
+      Files.createDirectories(root.resolve("a/b"));
+      Files.createDirectories(root.resolve("c"));
+      Files.createFile(root.resolve("top.txt"));
+      Files.createFile(root.resolve("a/notes.txt"));
+      Files.createFile(root.resolve("a/b/notes.txt"));
+      Files.createFile(root.resolve("c/notes.txt"));
+      fs = new FileSystem();
+   }
+
+   @After
+   public void deleteTree() throws IOException {
+      try (Stream<Path> paths = Files.walk(root)) {
+         paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+   }
+
+   // Test if every file of the tree is added with its directory
+   @Test
+   public void testCrawl() throws IOException {
+      FileSystemCrawler crawler = new FileSystemCrawler(fs);
+
+      assertEquals(4, crawler.crawl(root.toString()));
+      assertEquals(3, fs.findFilesByName("notes.txt").size());
+      assertNotNull(fs.findFile("notes.txt", root.resolve("a/b").toString()));
+      assertNotNull(fs.findFile("top.txt", root.toString()));
+   }
+
+   // Test if the date of a file is its last modified time
+   @Test
+   public void testModifiedDate() throws IOException {
+      FileTime time = FileTime.from(Instant.parse("2021-03-25T12:00:00Z"));
+      Files.setLastModifiedTime(root.resolve("top.txt"), time);
+
+      new FileSystemCrawler(fs).crawl(root.toString());
+      assertEquals(FileSystemCrawler.toDate(time),
+            fs.findFile("top.txt", root.toString()).lastModifiedDate);
+   }
+
+   // Test if tiny batches and queue still index the whole tree
+   @Test
+   public void testSmallBatches() throws IOException {
+      FileSystemCrawler crawler = new FileSystemCrawler(fs, 2, 1, 1);
+
+      assertEquals(4, crawler.crawl(root.toString()));
+      assertEquals(0, crawler.skippedDirectories());
+   }
+
+   // Test if crawling a path that is not a directory fails
+   @Test(expected = IOException.class)
+   public void testNotADirectory() throws IOException {
+      new FileSystemCrawler(fs).crawl(root.resolve("top.txt").toString());
+   }
+}
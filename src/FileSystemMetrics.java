@@ -0,0 +1,136 @@
+/**
+ * Collects the metrics of a file system: probe lengths and resizes of its hash maps and
+ * the latency of each operation
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class FileSystemMetrics implements MetricsListener {
+
+   private LongAdder probes;
+   private LongAdder probeLengths;
+   private AtomicLong maxProbeLength;
+   private LongAdder resizes;
+   private LongAdder resizeNanos;
+   private ConcurrentHashMap<String, LatencyHistogram> latencies;
+
+   /**
+    * Constructs an empty collection of metrics
+    */
+   public FileSystemMetrics() {
+      this.probes = new LongAdder();
+      this.probeLengths = new LongAdder();
+      this.maxProbeLength = new AtomicLong();
+      this.resizes = new LongAdder();
+      this.resizeNanos = new LongAdder();
+      this.latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+   }
+
+   @Override
+   public void probe(int length) {
+      this.probes.increment();
+      this.probeLengths.add(length);
+      if (length > this.maxProbeLength.get()) {
+         this.maxProbeLength.accumulateAndGet(length, Math::max);
+      }
+   }
+
+   @Override
+   public void resize(int oldCapacity, int newCapacity, long nanos) {
+      this.resizes.increment();
+      this.resizeNanos.add(nanos);
+   }
+
+   @Override
+   public void operation(String operation, long nanos) {
+      this.latencies.computeIfAbsent(operation, k -> new LatencyHistogram()).record(nanos);
+   }
+
+   /**
+    * @return the average number of entries compared per hash map search
+    */
+   public double averageProbeLength() {
+      long n = this.probes.sum();
+      return n == 0 ? 0 : (double) this.probeLengths.sum() / n;
+   }
+
+   /**
+    * @return the largest number of entries compared in one hash map search
+    */
+   public long maxProbeLength() {
+      return this.maxProbeLength.get();
+   }
+
+   /**
+    * @return the number of times a hash map grew its buckets
+    */
+   public long resizeCount() {
+      return this.resizes.sum();
+   }
+
+   /**
+    * @return the total time spent resizing hash maps in nanoseconds
+    */
+   public long resizeNanos() {
+      return this.resizeNanos.sum();
+   }
+
+   /**
+    * Returns the latency histogram of an operation
+    * 
+    * @param operation The name of the operation, one of the FileSystem.OP_ constants
+    * @return the histogram, empty if the operation was never recorded
+    */
+   public LatencyHistogram latency(String operation) {
+      LatencyHistogram histogram = this.latencies.get(operation);
+      return histogram == null ? new LatencyHistogram() : histogram;
+   }
+
+   /**
+    * Returns a summary of these metrics and of the hash maps of a file system
+    * 
+    * @param fs The file system whose maps are described
+    * @return a String with one metric per line
+    */
+   public String report(FileSystem fs) {
+      StringBuilder sb = new StringBuilder();
+
+      // writers rehash the maps, so they are described under the read lock
+      fs.lock.readLock().lock();
+      try {
+         sb.append("nameMap: ").append(describe(fs.nameMap)).append("\n");
+         sb.append("dateMap: ").append(describe(fs.dateMap)).append("\n");
+      }
+      finally {
+         fs.lock.readLock().unlock();
+      }
+      sb.append("probe length: {mean: ").append(this.averageProbeLength())
+            .append(", max: ").append(this.maxProbeLength()).append("}\n");
+      sb.append("resizes: {count: ").append(this.resizeCount()).append(", nanos: ")
+            .append(this.resizeNanos()).append("}\n");
+      if (fs.getQueryCache() != null) {
+         sb.append("query cache: ").append(fs.getQueryCache()).append("\n");
+      }
+      for (String operation : this.latencies.keySet()) {
+         sb.append(operation).append(": ").append(this.latencies.get(operation))
+               .append("\n");
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * Describes the state of a hash map. Must be called with the read lock of its file
+    * system held
+    * 
+    * @param map The map to be described
+    * @return a String with the size, capacity, load and chain length histogram
+    */
+   private static String describe(MyHashMap<?, ?> map) {
+      return "{size: " + map.size() + ", capacity: " + map.capacity() + ", load: "
+            + map.load() + ", chains: " + Arrays.toString(map.chainLengthHistogram()) + "}";
+   }
+}
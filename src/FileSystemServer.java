@@ -0,0 +1,346 @@
+/**
+ * Embedded HTTP server that lets other processes query and update a file system. Files
+ * are returned as "name, dir, date" lines, the format of the input files, and are
+ * streamed with chunked encoding. Results are copied PAGE_SIZE files at a time with a
+ * FileCursor, and the read lock is released before a page is written, so a client that
+ * reads slowly never holds back changes or other queries. Connections are kept alive,
+ * so a client can send its requests one after the other on the same connection
+ *
+ * GET  /file?name=..&dir=..    the file, 404 if not found
+ * GET  /name?name=..           files with the name
+ * GET  /date?date=..           files with the last modified date
+ * GET  /multdir?date=..        files with the date whose name is in several directories
+ * POST /add?name=..&dir=..&date=..   true if the file was added
+ * POST /remove?name=..&dir=..        true if the file was removed
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.StreamSupport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class FileSystemServer {
+   public static final int DEFAULT_BACKLOG = 4096;
+   // requests beyond this many wait in the queue of the executor when the JDK has no
+   // virtual threads
+   public static final int DEFAULT_THREADS = Math.max(8,
+         4 * Runtime.getRuntime().availableProcessors());
+   // files copied under the read lock before they are written to the client
+   public static final int PAGE_SIZE = 1024;
+   private static final String THREAD_NAME = "filesystem-server";
+
+   private FileSystem fs;
+   private HttpServer server;
+   private ExecutorService executor;
+
+   /**
+    * Constructs a server for a file system on a loopback port. The server does not
+    * accept requests until it is started
+    *
+    * @param fs   The file system to serve
+    * @param port The port to listen on, 0 for any free port
+    * @throws IOException if the port cannot be bound
+    */
+   public FileSystemServer(FileSystem fs, int port) throws IOException {
+      this.fs = fs;
+      this.server = HttpServer.create(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), port), DEFAULT_BACKLOG);
+
+      this.server.createContext("/file", this.handler(this::file));
+      this.server.createContext("/name", this.handler(this::byName));
+      this.server.createContext("/date", this.handler(this::byDate));
+      this.server.createContext("/multdir", this.handler(this::inMultDir));
+      this.server.createContext("/add", this.handler(this::add));
+      this.server.createContext("/remove", this.handler(this::remove));
+   }
+
+   /**
+    * Starts accepting requests. Each request runs on its own virtual thread when the
+    * JDK has them, otherwise on a fixed pool of DEFAULT_THREADS threads
+    */
+   public void start() {
+      this.executor = newExecutor();
+      this.server.setExecutor(this.executor);
+      this.server.start();
+   }
+
+   /**
+    * Stops the server, waiting up to the specified delay for running requests
+    *
+    * @param delaySeconds The maximum time to wait for running requests
+    */
+   public void stop(int delaySeconds) {
+      this.server.stop(delaySeconds);
+      if (this.executor != null) {
+         this.executor.shutdown();
+      }
+   }
+
+   /**
+    * @return the port the server listens on
+    */
+   public int getPort() {
+      return this.server.getAddress().getPort();
+   }
+
+   /**
+    * Creates an executor with one virtual thread per task when the JDK supports them,
+    * otherwise a fixed pool, so many connections never start as many platform threads
+    *
+    * @return the executor for requests
+    */
+   private static ExecutorService newExecutor() {
+      try {
+         return (ExecutorService) Executors.class
+               .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }
+      catch (ReflectiveOperationException e) {
+         AtomicInteger count = new AtomicInteger();
+         return Executors.newFixedThreadPool(DEFAULT_THREADS, task -> {
+            Thread thread = new Thread(task, THREAD_NAME + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         });
+      }
+   }
+
+   /**
+    * The response of a request: a status and the lines of the body. FileData lines are
+    * formatted when they are written, so results are never copied into Strings
+    */
+   private static class Response {
+      private int status;
+      private Iterator<?> lines;
+
+      private Response(int status, List<?> lines) {
+         this(status, lines.iterator());
+      }
+
+      private Response(int status, Iterator<?> lines) {
+         this.status = status;
+         this.lines = lines;
+      }
+   }
+
+   /**
+    * Computes the response of a request from its query parameters
+    */
+   private interface Endpoint {
+      Response handle(String method, HashMap<String, String> params);
+   }
+
+   /**
+    * Wraps an endpoint in a handler that parses the query and streams the response
+    *
+    * @param endpoint The endpoint
+    * @return the handler for the HttpServer
+    */
+   private HttpHandler handler(Endpoint endpoint) {
+      return exchange -> {
+         try {
+            Response response;
+            try {
+               response = endpoint.handle(exchange.getRequestMethod(),
+                     parseQuery(exchange.getRequestURI().getRawQuery()));
+            }
+            catch (IllegalArgumentException e) {
+               response = new Response(400, List.of(e.getMessage()));
+            }
+            send(exchange, response);
+         }
+         finally {
+            exchange.close();
+         }
+      };
+   }
+
+   // Endpoints, see the class comment for their parameters
+
+   private Response file(String method, HashMap<String, String> params) {
+      FileData f = this.fs.findFile(required(params, "name"), required(params, "dir"));
+      if (f == null) {
+         return new Response(404, List.of());
+      }
+      return new Response(200, List.of(f));
+   }
+
+   private Response byName(String method, HashMap<String, String> params) {
+      String name = required(params, "name");
+      return files(new Pages(t -> FileCursor.byName(this.fs, name, t, PAGE_SIZE)));
+   }
+
+   private Response byDate(String method, HashMap<String, String> params) {
+      String date = required(params, "date");
+      return files(new Pages(t -> FileCursor.byDate(this.fs, date, t, PAGE_SIZE)));
+   }
+
+   private Response inMultDir(String method, HashMap<String, String> params) {
+      String date = required(params, "date");
+      if (this.fs.getQueryCache() != null) {
+         // a copy of the cached result
+         return new Response(200, this.fs.findFilesInMultDir(date));
+      }
+      Pages pages = new Pages(t -> FileCursor.byDate(this.fs, date, t, PAGE_SIZE));
+      return files(StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages,
+            Spliterator.ORDERED), false)
+            .filter(f -> this.fs.nameCardinality(f.name) > 1).iterator());
+   }
+
+   private Response add(String method, HashMap<String, String> params) {
+      if (!method.equals("POST")) {
+         return new Response(405, List.of("Use POST"));
+      }
+      boolean added = this.fs.add(required(params, "name"), required(params, "dir"),
+            required(params, "date"));
+      return new Response(200, List.of(added));
+   }
+
+   private Response remove(String method, HashMap<String, String> params) {
+      if (!method.equals("POST")) {
+         return new Response(405, List.of("Use POST"));
+      }
+      boolean removed = this.fs.removeFile(required(params, "name"),
+            required(params, "dir"));
+      return new Response(200, List.of(removed));
+   }
+
+   /**
+    * Returns a response with one line per file
+    *
+    * @param files The files of the response, read as they are written
+    * @return the response
+    */
+   private static Response files(Iterator<FileData> files) {
+      return new Response(200, files);
+   }
+
+   /**
+    * Iterates over the files of a query one page at a time. Each page is copied under
+    * the read lock when the previous one has been written, so the lock is never held
+    * while writing to the client
+    */
+   private static class Pages implements Iterator<FileData> {
+      private Function<String, FileCursor> open;
+      private FileCursor page;
+
+      /**
+       * @param open Opens the cursor of a page from the token of the previous one, null
+       *             for the first page
+       */
+      private Pages(Function<String, FileCursor> open) {
+         this.open = open;
+         this.page = open.apply(null);
+      }
+
+      @Override
+      public boolean hasNext() {
+         while (!this.page.hasNext() && this.page.nextToken() != null) {
+            this.page = this.open.apply(this.page.nextToken());
+         }
+         return this.page.hasNext();
+      }
+
+      @Override
+      public FileData next() {
+         if (!this.hasNext()) {
+            throw new NoSuchElementException();
+         }
+         return this.page.next();
+      }
+   }
+
+   /**
+    * Formats a file as a line of an input file
+    *
+    * @param f The file
+    * @return the "name, dir, date" line
+    */
+   static String toLine(FileData f) {
+      return f.name + ", " + f.dir + ", " + f.lastModifiedDate;
+   }
+
+   /**
+    * Writes a response with chunked encoding
+    *
+    * @param exchange The exchange of the request
+    * @param response The response
+    * @throws IOException if the client cannot be written to
+    */
+   private static void send(HttpExchange exchange, Response response) throws IOException {
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      boolean empty = !response.lines.hasNext();
+      exchange.sendResponseHeaders(response.status, empty ? -1 : 0);
+
+      if (!empty) {
+         Writer out = new BufferedWriter(new OutputStreamWriter(
+               exchange.getResponseBody(), StandardCharsets.UTF_8));
+         while (response.lines.hasNext()) {
+            Object line = response.lines.next();
+            out.write(line instanceof FileData ? toLine((FileData) line)
+                  : String.valueOf(line));
+            out.write('\n');
+         }
+         out.flush();
+      }
+   }
+
+   /**
+    * Returns a query parameter
+    *
+    * @param params The query parameters
+    * @param name   The name of the parameter
+    * @return the value of the parameter
+    * @throws IllegalArgumentException if the parameter is missing
+    */
+   private static String required(HashMap<String, String> params, String name)
+         throws IllegalArgumentException {
+      String value = params.get(name);
+      if (value == null) {
+         throw new IllegalArgumentException("Missing parameter " + name);
+      }
+      return value;
+   }
+
+   /**
+    * Decodes the parameters of a query string
+    *
+    * @param query The raw query string, null if the URI has none
+    * @return map from parameter name to value
+    */
+   private static HashMap<String, String> parseQuery(String query) {
+      HashMap<String, String> params = new HashMap<String, String>();
+      if (query == null) {
+         return params;
+      }
+
+      for (String pair : query.split("&")) {
+         int equals = pair.indexOf('=');
+         if (equals > 0) {
+            String name = URLDecoder.decode(pair.substring(0, equals),
+                  StandardCharsets.UTF_8);
+            params.put(name, URLDecoder.decode(pair.substring(equals + 1),
+                  StandardCharsets.UTF_8));
+         }
+      }
+      return params;
+   }
+}
@@ -0,0 +1,108 @@
+/**
+ * Unit testing for the embedded query server
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class FileSystemServerTest {
+
+   private FileSystemServer server;
+
+   // Serves the file system of the input file on a free port
+   @Before
+   public void startServer() throws IOException {
+      server = new FileSystemServer(new FileSystem("test/input.txt"), 0);
+      server.start();
+   }
+
+   @After
+   public void stopServer() {
+      server.stop(0);
+   }
+
+   // Sends a request and returns the status followed by the body
+   private String request(String method, String path) throws IOException {
+      URL url = new URL("http://127.0.0.1:" + server.getPort() + path);
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setRequestMethod(method);
+
+      int status = connection.getResponseCode();
+      InputStream in = status < 400 ? connection.getInputStream()
+            : connection.getErrorStream();
+      String body = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      return status + " " + body;
+   }
+
+   // Test if the queries return the files as input file lines
+   @Test
+   public void testQueries() throws IOException {
+      assertEquals("200 homework.pdf, /vic/2021, 03/25/2021\n",
+            request("GET", "/file?name=homework.pdf&dir=%2Fvic%2F2021"));
+      assertEquals("404 ", request("GET", "/file?name=homework.pdf&dir=%2Fhome"));
+      assertEquals(3, request("GET", "/name?name=mySample.txt").split("\n").length);
+      assertEquals(2, request("GET", "/date?date=02%2F01%2F2021").split("\n").length);
+      assertEquals(2, request("GET", "/multdir?date=02%2F01%2F2021").split("\n").length);
+   }
+
+   // Test if files are added and removed with POST requests
+   @Test
+   public void testUpdates() throws IOException {
+      assertEquals("200 true\n",
+            request("POST", "/add?name=test.txt&dir=%2Fhome&date=04%2F02%2F2021"));
+      assertEquals("200 false\n",
+            request("POST", "/add?name=test.txt&dir=%2Fhome&date=04%2F02%2F2021"));
+      assertEquals("200 true\n", request("POST", "/remove?name=test.txt&dir=%2Fhome"));
+      assertEquals("405 Use POST\n", request("GET", "/remove?name=test.txt&dir=%2Fhome"));
+   }
+
+   // Test if a missing parameter is a bad request
+   @Test
+   public void testMissingParameter() throws IOException {
+      assertEquals("400 Missing parameter dir\n", request("GET", "/file?name=test.txt"));
+   }
+
+   // Test if a client that does not read a large response holds back neither changes
+   // nor other queries
+   @Test
+   public void testStalledClient() throws Exception {
+      FileSystem large = new FileSystem();
+      Batch batch = new Batch();
+      for (int i = 0; i < 300000; i++) {
+         batch.add("file" + i + ".txt", String.format("/dir%07d", i), "01/01/2021");
+      }
+      large.apply(batch);
+      server.stop(0);
+      server = new FileSystemServer(large, 0);
+      server.start();
+
+      try (Socket client = new Socket()) {
+         client.setReceiveBufferSize(1024);
+         client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+               server.getPort()));
+         client.getOutputStream().write("GET /date?date=01%2F01%2F2021 HTTP/1.1\r\n"
+               .concat("Host: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+         // lets the server fill the socket buffers with the response
+         Thread.sleep(500);
+
+         CompletableFuture<Boolean> added = CompletableFuture.supplyAsync(
+               () -> large.add("new.txt", "/home", "01/02/2021"));
+         assertEquals(true, added.get(10, TimeUnit.SECONDS));
+         assertNotEquals(null, large.findFile("file1.txt", "/dir0000001"));
+         assertEquals("200 file1.txt, /dir0000001, 01/01/2021\n",
+               request("GET", "/file?name=file1.txt&dir=%2Fdir0000001"));
+      }
+   }
+}
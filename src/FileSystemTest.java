@@ -6,9 +6,15 @@ import static org.junit.Assert.*;
 
 import org.junit.*;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class FileSystemTest {
 
@@ -17,8 +23,7 @@ public class FileSystemTest {
    // Creates a FileSystem with entries from a text file
    @Before
    public void initializeFromFile() {
-      fs = new FileSystem("C:\\Users\\vicen\\Desktop\\Projects"
-            + "\\File System\\test\\input.txt");
+      fs = new FileSystem("test/input.txt");
    }
 
    // Tests findFile method
@@ -146,4 +151,498 @@ public class FileSystemTest {
       assertEquals(false, fs.removeByName(null));
 
    }
+
+   // Test if the streams return the same files as the list queries
+   @Test
+   public void testStreams() {
+      assertEquals(3, fs.streamFilesByName("mySample.txt").count());
+      assertEquals(2, fs.streamFilesByDate("02/01/2021").count());
+      assertEquals(0, fs.streamFilesByName("NotInMap.pdf").count());
+      assertEquals(8, fs.streamAll().count());
+      assertEquals(1, fs.streamFilesByName("mySample.txt").skip(1).limit(1).count());
+   }
+
+   // Test if a cursor pages through every file and resumes with its token
+   @Test
+   public void testCursorPages() {
+      List<String> all = fs.streamAll().map(FileData::toString).sorted()
+            .collect(Collectors.toList());
+      List<String> paged = new ArrayList<>();
+      String token = null;
+
+      do {
+         FileCursor cursor = FileCursor.open(fs, token, 3);
+         while (cursor.hasNext()) {
+            paged.add(cursor.next().toString());
+         }
+         token = cursor.nextToken();
+      } while (token != null);
+
+      Collections.sort(paged);
+      assertEquals(all, paged);
+   }
+
+   // Test if files added and removed between pages, with a rehash of the nameMap, do
+   // not make the cursor skip or repeat the other files
+   @Test
+   public void testCursorStableUnderChanges() {
+      for (int i = 0; i < 50; i++) {
+         fs.add("file" + i, "/cursor", "05/05/2021");
+      }
+      List<String> kept = fs.streamAll().filter(f -> !f.name.equals("file7"))
+            .map(FileData::toString).sorted().collect(Collectors.toList());
+
+      List<String> paged = new ArrayList<>();
+      String token = null;
+      int page = 0;
+      do {
+         FileCursor cursor = FileCursor.open(fs, token, 5);
+         while (cursor.hasNext()) {
+            paged.add(cursor.next().toString());
+         }
+         token = cursor.nextToken();
+
+         if (page++ == 2) {
+            fs.removeFile("file7", "/cursor");
+            for (int i = 0; i < 500; i++) {
+               fs.add("new" + i, "/cursor", "05/05/2021");
+            }
+         }
+      } while (token != null);
+
+      // file7 is removed while paging, so it may or may not have been returned
+      List<String> old = paged.stream().filter(f -> !f.startsWith("{Name: new")
+            && !f.startsWith("{Name: file7,")).sorted().collect(Collectors.toList());
+      assertEquals(kept, old);
+   }
+
+   // Test if a file kept while the files before it in its list are removed is still
+   // returned after the token
+   @Test
+   public void testCursorResumesByDirectory() {
+      fs.add("x", "/a", "05/05/2021");
+      fs.add("x", "/c", "05/05/2021");
+      fs.add("x", "/b", "05/05/2021");
+
+      FileCursor cursor = FileCursor.byName(fs, "x", null, 2);
+      assertEquals("/a", cursor.next().dir);
+      assertEquals("/b", cursor.next().dir);
+      fs.removeFile("x", "/a");
+      fs.removeFile("x", "/b");
+
+      cursor = FileCursor.byName(fs, "x", cursor.nextToken(), 2);
+      assertEquals("/c", cursor.next().dir);
+      assertEquals(false, cursor.hasNext());
+      assertEquals(null, cursor.nextToken());
+   }
+
+   // Test if the cursors of a name and of a date page through their files in order
+   @Test
+   public void testKeyCursors() {
+      for (int i = 0; i < 30; i++) {
+         fs.add("key" + (i % 4), "/dir" + (29 - i), "06/06/2021");
+      }
+      assertEquals(fs.streamFilesByName("key1").collect(Collectors.toList()),
+            pages(token -> FileCursor.byName(fs, "key1", token, 3)));
+      List<FileData> byDate = pages(
+            token -> FileCursor.byDate(fs, "06/06/2021", token, 4));
+      assertEquals(30, byDate.size());
+      assertEquals(fs.streamFilesByDate("06/06/2021").collect(Collectors.toList()),
+            byDate);
+      assertEquals(0, pages(token -> FileCursor.byName(fs, "absent", token, 3)).size());
+   }
+
+   // Reads every page of a cursor
+   private static List<FileData> pages(Function<String, FileCursor> open) {
+      List<FileData> files = new ArrayList<>();
+      String token = null;
+      do {
+         FileCursor cursor = open.apply(token);
+         cursor.forEachRemaining(files::add);
+         token = cursor.nextToken();
+      } while (token != null);
+      return files;
+   }
+
+   // Test if a token is only accepted by the kind of cursor it came from
+   @Test(expected = IllegalArgumentException.class)
+   public void testCursorTokenOfOtherKind() {
+      fs.add("x", "/a", "05/05/2021");
+      fs.add("x", "/b", "05/05/2021");
+      String token = FileCursor.byName(fs, "x", null, 1).nextToken();
+      FileCursor.open(fs, token, 1);
+   }
+
+   // Test if an invalid token is rejected
+   @Test(expected = IllegalArgumentException.class)
+   public void testCursorInvalidToken() {
+      FileCursor.open(fs, "abc", 3);
+   }
+
+   // Test if a composite query combines the name, date and directory conditions
+   @Test
+   public void testQuery() {
+      assertEquals(3, fs.query().name("mySample.txt").find().size());
+      assertEquals(2, fs.query().name("mySample.txt")
+            .dateBetween("02/01/2021", "02/05/2021").find().size());
+      assertEquals(2, fs.query().name("*.txt").under("/user").find().size());
+      assertEquals(1, fs.query().name("*.txt").under("/user/abc").find().size());
+      assertEquals(2, fs.query().name("p*.pdf").dateBetween("03/01/2021", "09/30/2021")
+            .find().size());
+      assertEquals(0, fs.query().under("/use").find().size());
+      assertEquals(0, fs.query().name("NotInMap.pdf").under("/home").find().size());
+   }
+
+   // Test if queries with an under condition give the same files with the directory
+   // index, and the index follows changes
+   @Test
+   public void testQueryWithDirectoryIndex() {
+      fs.enableDirectoryIndex();
+      assertEquals(2, fs.query().name("*.txt").under("/user").find().size());
+      assertEquals(1, fs.query().name("*.txt").under("/user/abc").find().size());
+      assertEquals(0, fs.query().under("/use").find().size());
+      assertEquals(3, fs.query().under("/user").find().size());
+      assertEquals(9 - 1, fs.query().under("/").find().size());
+
+      fs.removeFile("notes.txt", "/user/abc");
+      fs.add("new.txt", "/user/abc/def", "05/05/2021");
+      assertEquals(List.of("new.txt"), fs.query().under("/user/abc").stream()
+            .map(f -> f.name).collect(Collectors.toList()));
+   }
+
+   // Test if the cardinality of the indexes follows adds and removes
+   @Test
+   public void testCardinality() {
+      assertEquals(3, fs.nameCardinality("mySample.txt"));
+      assertEquals(2, fs.dateCardinality("02/01/2021"));
+
+      fs.removeFile("mySample.txt", "/home");
+      assertEquals(2, fs.nameCardinality("mySample.txt"));
+      assertEquals(1, fs.dateCardinality("02/01/2021"));
+      assertEquals(0, fs.nameCardinality("NotInMap.pdf"));
+   }
+
+   // Test if removing a file that is not in the directory returns false
+   @Test
+   public void testRemoveMissingFile() {
+      assertEquals(false, fs.removeFile("mySample.txt", "Not a directory"));
+      assertEquals(3, fs.findFilesByName("mySample.txt").size());
+   }
+
+   // Test if the metrics record the latency of each operation
+   @Test
+   public void testMetrics() {
+      FileSystemMetrics metrics = new FileSystemMetrics();
+      fs.setMetricsListener(metrics);
+
+      fs.add("test.txt", "/home", "04/02/2021");
+      fs.findFile("test.txt", "/home");
+      fs.findFilesByName("test.txt");
+      fs.removeFile("test.txt", "/home");
+
+      assertEquals(1, metrics.latency(FileSystem.OP_ADD).count());
+      assertEquals(1, metrics.latency(FileSystem.OP_FIND_FILE).count());
+      assertEquals(1, metrics.latency(FileSystem.OP_FIND_BY_NAME).count());
+      assertEquals(1, metrics.latency(FileSystem.OP_REMOVE_FILE).count());
+      assertEquals(true, metrics.averageProbeLength() > 0);
+   }
+
+   // Test if files added from several threads are all indexed
+   @Test
+   public void testConcurrentAdd() throws InterruptedException {
+      Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+         String dir = "/thread" + t;
+         threads[t] = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+               fs.add("file" + i, dir, "05/05/2021");
+               fs.findFilesByName("file" + i);
+            }
+         });
+         threads[t].start();
+      }
+      for (Thread thread : threads) {
+         thread.join();
+      }
+
+      assertEquals(4000, fs.findFilesByDate("05/05/2021").size());
+      assertEquals(4, fs.findFilesByName("file999").size());
+   }
+
+   // Test if metrics can be switched on and off while other threads run operations
+   @Test
+   public void testMetricsToggledConcurrently() throws InterruptedException {
+      Thread worker = new Thread(() -> {
+         for (int i = 0; i < 20000; i++) {
+            fs.add("file" + i, "/toggle", "05/05/2021");
+            fs.findFile("file" + i, "/toggle");
+            fs.removeFile("file" + i, "/toggle");
+         }
+      });
+      List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+      worker.setUncaughtExceptionHandler((t, e) -> errors.add(e));
+      worker.start();
+      FileSystemMetrics metrics = new FileSystemMetrics();
+      while (worker.isAlive()) {
+         fs.setMetricsListener(metrics);
+         fs.setMetricsListener(null);
+      }
+      worker.join();
+
+      assertEquals(List.of(), errors);
+      assertEquals(0, fs.nameCardinality("file0"));
+      assertEquals(8, fs.query().find().size());
+   }
+
+   // Test if the metrics report describes the maps while other threads rehash them
+   @Test
+   public void testMetricsReportConcurrently() throws InterruptedException {
+      Thread worker = new Thread(() -> {
+         for (int i = 0; i < 50000; i++) {
+            fs.add("file" + i, "/report", String.format("%02d/01/2021", i % 12 + 1));
+         }
+      });
+      List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+      worker.setUncaughtExceptionHandler((t, e) -> errors.add(e));
+      worker.start();
+      FileSystemMetrics metrics = new FileSystemMetrics();
+      while (worker.isAlive()) {
+         assertTrue(metrics.report(fs).startsWith("nameMap: {size: "));
+      }
+      worker.join();
+
+      assertEquals(List.of(), errors);
+      assertTrue(metrics.report(fs).contains("size: 50005,"));
+   }
+
+   // Test if a batch adds and removes files like the single operations
+   @Test
+   public void testApplyBatch() {
+      Batch batch = new Batch().add("test.txt", "/home", "04/02/2021")
+            .add("test.txt", "/user", "04/02/2021").remove("mySample.txt", "/home")
+            .remove("NotInMap.pdf", "/home").add("notes.txt", "/user/abc", "01/01/2021");
+
+      assertEquals(3, fs.apply(batch));
+      assertEquals(2, fs.findFilesByName("test.txt").size());
+      assertEquals(null, fs.findFile("mySample.txt", "/home"));
+      assertEquals("12/03/2021", fs.findFile("notes.txt", "/user/abc").lastModifiedDate);
+      assertEquals(3, fs.findFilesByDate("04/02/2021").size());
+      assertEquals(1, fs.findFilesByDate("02/01/2021").size());
+   }
+
+   // Test if a file added and removed in the same batch never reaches the maps, and a
+   // file removed and added again gets its new date
+   @Test
+   public void testApplyBatchCollapse() {
+      Batch batch = new Batch().add("test.txt", "/home", "04/02/2021")
+            .remove("test.txt", "/home").remove("important.pdf", "/home")
+            .add("important.pdf", "/home", "05/05/2021");
+
+      assertEquals(2, fs.apply(batch));
+      assertEquals(null, fs.findFile("test.txt", "/home"));
+      assertEquals("05/05/2021", fs.findFile("important.pdf", "/home").lastModifiedDate);
+      assertEquals(0, fs.findFilesByDate("04/02/2021").size());
+
+      ArrayList<String> expectedKeys = new ArrayList<>();
+      expectedKeys.add("mySample.txt");
+      expectedKeys.add("notes.txt");
+      expectedKeys.add("homework.pdf");
+      expectedKeys.add("project.pdf");
+      expectedKeys.add("important.pdf");
+      ArrayList<String> ls = fs.findAllFilesName();
+      Collections.sort(ls);
+      Collections.sort(expectedKeys);
+      assertArrayEquals(expectedKeys.toArray(), ls.toArray());
+   }
+
+   // Test if repeated date queries are answered from the cache
+   @Test
+   public void testQueryCacheHits() {
+      fs.enableQueryCache(1 << 20);
+
+      assertEquals(1, fs.findFilesInMultDir("03/03/2021").size());
+      assertEquals(1, fs.findFilesInMultDir("03/03/2021").size());
+      fs.findFilesByDate("02/01/2021").clear();
+      assertEquals(2, fs.findFilesByDate("02/01/2021").size());
+
+      assertEquals(2, fs.getQueryCache().hits());
+      assertEquals(2, fs.getQueryCache().misses());
+   }
+
+   // Test if changes to a name invalidate the cached results of its other dates
+   @Test
+   public void testQueryCacheInvalidation() {
+      fs.enableQueryCache(1 << 20);
+      assertEquals(0, fs.findFilesInMultDir("04/02/2021").size());
+      assertEquals(1, fs.findFilesInMultDir("03/03/2021").size());
+
+      fs.add("important.pdf", "/user", "05/05/2021");
+      assertEquals(1, fs.findFilesInMultDir("04/02/2021").size());
+
+      fs.removeFile("project.pdf", "/user");
+      assertEquals(0, fs.findFilesInMultDir("03/03/2021").size());
+
+      fs.apply(new Batch().add("project.pdf", "/root", "01/01/2021"));
+      assertEquals(1, fs.findFilesInMultDir("03/03/2021").size());
+
+      fs.removeByName("important.pdf");
+      assertEquals(0, fs.findFilesInMultDir("04/02/2021").size());
+      assertEquals(0, fs.findFilesByDate("05/05/2021").size());
+   }
+
+   // Test if the least recently used results are evicted over the size limit
+   @Test
+   public void testQueryCacheEviction() {
+      fs.enableQueryCache(400);
+      fs.findFilesByDate("02/01/2021");
+      fs.findFilesByDate("02/06/2021");
+      fs.findFilesByDate("02/01/2021");
+      fs.findFilesByDate("03/03/2021");
+      fs.findFilesByDate("04/02/2021");
+
+      assertEquals(true, fs.getQueryCache().bytes() <= 400);
+      assertEquals(true, fs.getQueryCache().evictions() > 0);
+      fs.findFilesByDate("04/02/2021");
+      assertEquals(2, fs.getQueryCache().hits());
+   }
+
+   // Test if the Bloom filter keeps lookups correct through every kind of change
+   @Test
+   public void testBloomFilter() {
+      fs.enableBloomFilter(4, 0.01);
+
+      assertNotEquals(null, fs.findFile("mySample.txt", "/home"));
+      assertEquals(null, fs.findFile("mySample.txt", "/nowhere"));
+      assertEquals(0, fs.findFilesByName("Not In File").size());
+
+      // grows past the expected number of files
+      for (int i = 0; i < 100; i++) {
+         assertEquals(true, fs.add("file" + i, "/bloom", "05/05/2021"));
+      }
+      assertEquals(false, fs.add("file42", "/bloom", "05/05/2021"));
+      assertNotEquals(null, fs.findFile("file99", "/bloom"));
+
+      fs.removeFile("file42", "/bloom");
+      assertEquals(null, fs.findFile("file42", "/bloom"));
+      assertEquals(0, fs.nameCardinality("file42"));
+      assertEquals(true, fs.add("file42", "/bloom", "05/05/2021"));
+
+      fs.removeByName("mySample.txt");
+      assertEquals(null, fs.findFile("mySample.txt", "/root"));
+      assertEquals(true, fs.add("mySample.txt", "/root", "02/01/2021"));
+
+      fs.apply(new Batch().remove("notes.txt", "/user/abc").add("new.txt", "/b", "x"));
+      assertEquals(null, fs.findFile("notes.txt", "/user/abc"));
+      assertEquals(false, fs.removeByName("notes.txt"));
+      assertNotEquals(null, fs.findFile("new.txt", "/b"));
+      assertEquals(1, fs.findFilesByName("new.txt").size());
+   }
+
+   // Test if diff finds the files added, removed and modified in another file system
+   @Test
+   public void testDiff() {
+      FileSystem other = new FileSystem("test/input.txt");
+      assertEquals(true, fs.diff(other).isEmpty());
+
+      other.add("new.txt", "/user/abc/def", "05/05/2021");
+      other.removeFile("mySample.txt", "/root");
+      other.apply(new Batch().remove("notes.txt", "/user/abc")
+            .add("notes.txt", "/user/abc", "06/06/2021"));
+      other.removeByName("homework.pdf");
+
+      CatalogDiff diff = fs.diff(other);
+      assertEquals(4, diff.size());
+      assertEquals("new.txt", diff.added().get(0).name);
+      assertEquals("06/06/2021", diff.modified().get(0).lastModifiedDate);
+      List<String> removed = diff.removed().stream().map(f -> f.name + " " + f.dir)
+            .sorted().collect(Collectors.toList());
+      assertEquals(List.of("homework.pdf /vic/2021", "mySample.txt /root"), removed);
+
+      // undoing the changes makes both file systems equal again
+      other.removeFile("new.txt", "/user/abc/def");
+      other.add("mySample.txt", "/root", "02/01/2021");
+      other.apply(new Batch().remove("notes.txt", "/user/abc")
+            .add("notes.txt", "/user/abc", "12/03/2021"));
+      other.add("homework.pdf", "/vic/2021", "03/25/2021");
+      assertEquals(true, fs.diff(other).isEmpty());
+      assertEquals(true, other.diff(fs).isEmpty());
+   }
+
+   // Test if the duplicate report lists each name in several directories once, with
+   // only the files in the date range
+   @Test
+   public void testDuplicateReport() throws IOException {
+      StringWriter out = new StringWriter();
+      assertEquals(2, fs.writeDuplicateReport(out, null, null));
+      List<String> lines = out.toString().lines().sorted().collect(Collectors.toList());
+      assertEquals("mySample.txt\t/home\t02/01/2021\t/root\t02/01/2021\t/user\t"
+            + "02/06/2021", lines.get(0));
+      assertEquals("project.pdf\t/projects\t03/03/2021\t/user\t09/03/2021",
+            lines.get(1));
+
+      out = new StringWriter();
+      assertEquals(1, fs.writeDuplicateReport(out, "02/01/2021", "02/05/2021"));
+      assertEquals("mySample.txt\t/home\t02/01/2021\t/root\t02/01/2021\n",
+            out.toString());
+
+      assertEquals(1, fs.writeDuplicateReport(new StringWriter(), "03/01/2021", null));
+      assertEquals(0, fs.writeDuplicateReport(new StringWriter(), "03/04/2021", null));
+   }
+
+   // Test if the default weakly consistent report writes the lines of the snapshot
+   // and lets changes run while it writes
+   @Test
+   public void testWeakDuplicateReport() throws IOException {
+      StringWriter snapshot = new StringWriter();
+      assertEquals(2, fs.writeDuplicateReport(snapshot, null, null, true));
+
+      List<String> added = new ArrayList<String>();
+      StringWriter out = new StringWriter() {
+         @Override
+         public void write(String line) {
+            super.write(line);
+            Thread writer = new Thread(() -> fs.add("late.txt", "/late" + added.size(),
+                  "01/01/2022"));
+            writer.start();
+            try {
+               writer.join(10000);
+            }
+            catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            added.add(line);
+         }
+      };
+      long written = fs.writeDuplicateReport(out, null, null);
+      assertEquals(2, added.size());
+      assertEquals(2, fs.findFilesByName("late.txt").size());
+      assertTrue(written >= 2);
+      assertTrue(out.toString().lines().collect(Collectors.toList())
+            .containsAll(snapshot.toString().lines().collect(Collectors.toList())));
+   }
+
+   // Test if a failing writer fails the consistent report and releases the lock
+   @Test
+   public void testDuplicateReportWriterFails() {
+      Writer failing = new StringWriter() {
+         @Override
+         public void write(String line) {
+            throw new UncheckedIOException(new IOException("disk full"));
+         }
+      };
+      try {
+         fs.writeDuplicateReport(failing, null, null, true);
+         fail("the writer failure is not thrown");
+      }
+      catch (IOException | UncheckedIOException e) {
+         // expected
+      }
+      assertEquals(true, fs.add("after.txt", "/home", "01/01/2022"));
+   }
+
+   // Test if a malformed date range is rejected
+   @Test(expected = IllegalArgumentException.class)
+   public void testDuplicateReportInvalidDate() throws IOException {
+      fs.writeDuplicateReport(new StringWriter(), "2021-02-01", null);
+   }
 }
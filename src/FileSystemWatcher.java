@@ -0,0 +1,371 @@
+/**
+ * Keeps a file system in sync with directory trees on disk. Every directory of the
+ * trees is registered with a WatchService, events are collected for a short window so
+ * bursts on the same file are applied once, and a directory whose events overflowed is
+ * indexed again from disk. The directory index of the file system is enabled, so the
+ * files of a directory are found without scanning every file
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class FileSystemWatcher implements Closeable {
+   public static final long DEFAULT_COALESCE_MILLIS = 200;
+
+   private FileSystem fs;
+   private long coalesceMillis;
+   private WatchService watcher;
+   private ConcurrentHashMap<WatchKey, Path> keys;
+   private Set<Path> directories;
+   private Thread thread;
+
+   /**
+    * Constructs a watcher with the default coalescing window
+    *
+    * @param fs The file system kept in sync
+    * @throws IOException if the WatchService cannot be created
+    */
+   public FileSystemWatcher(FileSystem fs) throws IOException {
+      this(fs, DEFAULT_COALESCE_MILLIS);
+   }
+
+   /**
+    * Constructs a watcher
+    *
+    * @param fs             The file system kept in sync
+    * @param coalesceMillis How long events are collected before they are applied
+    * @throws IOException if the WatchService cannot be created
+    */
+   public FileSystemWatcher(FileSystem fs, long coalesceMillis) throws IOException {
+      this.fs = fs;
+      this.coalesceMillis = coalesceMillis;
+      this.watcher = FileSystems.getDefault().newWatchService();
+      this.keys = new ConcurrentHashMap<WatchKey, Path>();
+      this.directories = ConcurrentHashMap.newKeySet();
+      fs.enableDirectoryIndex();
+   }
+
+   /**
+    * Watches a directory tree. Every directory under root is registered and the files
+    * of the file system under root are made the same as on disk: missing files are
+    * added, and files already stored, from a manifest for example, that were deleted or
+    * changed on disk are removed or get their new date
+    *
+    * @param root The directory to watch
+    * @throws IOException if root cannot be registered or listed
+    */
+   public void watch(String root) throws IOException {
+      Path dir = Paths.get(root).toAbsolutePath().normalize();
+      this.sync(dir, true);
+   }
+
+   /**
+    * Starts applying the changes on disk in a background thread
+    */
+   public synchronized void start() {
+      if (this.thread == null) {
+         this.thread = new Thread(this::run, "filesystem-watcher");
+         this.thread.setDaemon(true);
+         this.thread.start();
+      }
+   }
+
+   /**
+    * Stops watching. Changes made after this call are not applied
+    *
+    * @throws IOException if the WatchService cannot be closed
+    */
+   @Override
+   public void close() throws IOException {
+      this.watcher.close();
+   }
+
+   /**
+    * Waits for events, collects them for the coalescing window and applies them until
+    * the watcher is closed
+    */
+   private void run() {
+      try {
+         while (true) {
+            Set<Path> changed = new LinkedHashSet<Path>();
+            Set<Path> overflowed = new LinkedHashSet<Path>();
+
+            WatchKey key = this.watcher.take();
+            long deadline = System.nanoTime()
+                  + TimeUnit.MILLISECONDS.toNanos(this.coalesceMillis);
+            while (key != null) {
+               this.collect(key, changed, overflowed);
+               long wait = deadline - System.nanoTime();
+               key = wait > 0 ? this.watcher.poll(wait, TimeUnit.NANOSECONDS) : null;
+            }
+
+            this.apply(changed, overflowed);
+         }
+      }
+      catch (InterruptedException | ClosedWatchServiceException e) {
+         // closed
+      }
+   }
+
+   /**
+    * Adds the paths of the events of a key to the changed paths, or its directory to
+    * the overflowed directories if events were lost
+    *
+    * @param key        The key with pending events
+    * @param changed    The paths with changes
+    * @param overflowed The directories to be indexed again
+    */
+   private void collect(WatchKey key, Set<Path> changed, Set<Path> overflowed) {
+      Path dir = this.keys.get(key);
+
+      for (WatchEvent<?> event : key.pollEvents()) {
+         if (dir == null) {
+            continue;
+         }
+         if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            overflowed.add(dir);
+         }
+         else {
+            changed.add(dir.resolve((Path) event.context()));
+         }
+      }
+
+      if (!key.reset()) {
+         this.keys.remove(key);
+      }
+   }
+
+   /**
+    * Applies the collected changes to the file system
+    *
+    * @param changed    The paths with changes
+    * @param overflowed The directories to be indexed again
+    */
+   private void apply(Set<Path> changed, Set<Path> overflowed) {
+      // an overflow may be signaled on every key, a subtree is indexed again only once
+      Set<Path> roots = topMost(overflowed);
+      for (Path dir : roots) {
+         this.resync(dir);
+      }
+
+      for (Path path : changed) {
+         if (roots.contains(path) || hasAncestorIn(path, roots)) {
+            continue;
+         }
+
+         BasicFileAttributes attributes;
+         try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                  LinkOption.NOFOLLOW_LINKS);
+         }
+         catch (IOException e) {
+            attributes = null;
+         }
+
+         if (attributes == null) {
+            this.removed(path);
+         }
+         else if (attributes.isDirectory() && !this.directories.contains(path)) {
+            // a new directory, its files may be created before it is registered
+            this.resync(path);
+         }
+         else if (attributes.isRegularFile()) {
+            this.updated(path, FileSystemCrawler.toDate(attributes.lastModifiedTime()));
+         }
+      }
+   }
+
+   /**
+    * Adds a file, or changes its date if it is already in the file system
+    *
+    * @param path The path of the file
+    * @param date The last modified date of the file
+    */
+   private void updated(Path path, String date) {
+      String name = path.getFileName().toString();
+      String dir = path.getParent().toString();
+
+      FileData existing = this.fs.findFile(name, dir);
+      if (existing != null && existing.lastModifiedDate.equals(date)) {
+         return;
+      }
+      // readers never see the file missing while its date changes
+      this.fs.apply(new Batch().remove(name, dir).add(name, dir, date));
+   }
+
+   /**
+    * Removes a deleted file, or every file under a deleted directory
+    *
+    * @param path The path that no longer exists
+    */
+   private void removed(Path path) {
+      if (this.directories.contains(path)) {
+         this.forget(path);
+         this.removeUnder(path);
+      }
+      else {
+         this.fs.removeFile(path.getFileName().toString(), path.getParent().toString());
+      }
+   }
+
+   /**
+    * Indexes a directory again: registers its subdirectories, lists its files on disk
+    * and applies the differences with the file system as one batch, so readers never
+    * see the directory without its files
+    *
+    * @param dir The directory to be indexed again
+    */
+   private void resync(Path dir) {
+      try {
+         // a directory that was never watched has no files in the file system
+         this.sync(dir, this.directories.contains(dir));
+      }
+      catch (IOException e) {
+         // deleted before it could be indexed, its delete event removes it
+      }
+   }
+
+   /**
+    * Registers a directory tree, lists its files on disk and applies the differences
+    * with the file system as one batch
+    *
+    * @param dir     The directory
+    * @param indexed false if the file system has no files under dir, so they are not
+    *                looked up
+    * @throws IOException if dir cannot be registered or listed
+    */
+   private void sync(Path dir, boolean indexed) throws IOException {
+      this.register(dir);
+      List<FileData> onDisk = new FileSystemCrawler(this.fs).list(dir.toString());
+
+      HashMap<String, FileData> stored = new HashMap<String, FileData>();
+      if (indexed) {
+         for (FileData f : this.fs.query().under(dir.toString()).find()) {
+            stored.put(f.dir + '/' + f.name, f);
+         }
+      }
+
+      Batch batch = new Batch();
+      for (FileData f : onDisk) {
+         FileData old = stored.remove(f.dir + '/' + f.name);
+         if (old == null) {
+            batch.add(f.name, f.dir, f.lastModifiedDate);
+         }
+         else if (!old.lastModifiedDate.equals(f.lastModifiedDate)) {
+            batch.remove(f.name, f.dir).add(f.name, f.dir, f.lastModifiedDate);
+         }
+      }
+      for (FileData f : stored.values()) {
+         batch.remove(f.name, f.dir);
+      }
+      this.fs.apply(batch);
+   }
+
+   /**
+    * Keeps the directories that are not under another directory of a set
+    *
+    * @param dirs The directories
+    * @return the top-most directories of the set
+    */
+   static Set<Path> topMost(Set<Path> dirs) {
+      Set<Path> roots = new LinkedHashSet<Path>();
+      for (Path dir : dirs) {
+         if (!hasAncestorIn(dir, dirs)) {
+            roots.add(dir);
+         }
+      }
+      return roots;
+   }
+
+   /**
+    * Checks if a path is under one of a set of directories
+    *
+    * @param path The path
+    * @param dirs The directories
+    * @return true if an ancestor of path is in dirs
+    */
+   private static boolean hasAncestorIn(Path path, Set<Path> dirs) {
+      for (Path p = path.getParent(); p != null; p = p.getParent()) {
+         if (dirs.contains(p)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Removes every file stored in a directory or its subdirectories
+    *
+    * @param dir The directory
+    */
+   private void removeUnder(Path dir) {
+      Batch batch = new Batch();
+      for (FileData f : this.fs.query().under(dir.toString()).find()) {
+         batch.remove(f.name, f.dir);
+      }
+      this.fs.apply(batch);
+   }
+
+   /**
+    * Registers a directory and all its subdirectories with the WatchService
+    *
+    * @param root The directory to be registered
+    * @throws IOException if root cannot be walked
+    */
+   private void register(Path root) throws IOException {
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+         @Override
+         public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+               throws IOException {
+            if (!directories.contains(dir)) {
+               WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                     StandardWatchEventKinds.ENTRY_DELETE,
+                     StandardWatchEventKinds.ENTRY_MODIFY);
+               keys.put(key, dir);
+               directories.add(dir);
+            }
+            return FileVisitResult.CONTINUE;
+         }
+
+         @Override
+         public FileVisitResult visitFileFailed(Path file, IOException e) {
+            return FileVisitResult.CONTINUE;
+         }
+      });
+   }
+
+   /**
+    * Stops watching a deleted directory and its subdirectories
+    *
+    * @param dir The deleted directory
+    */
+   private void forget(Path dir) {
+      this.directories.removeIf(d -> d.startsWith(dir));
+      this.keys.entrySet().removeIf(e -> {
+         if (e.getValue().startsWith(dir)) {
+            e.getKey().cancel();
+            return true;
+         }
+         return false;
+      });
+   }
+}
@@ -0,0 +1,134 @@
+/**
+ * Unit testing for the watcher that keeps a file system in sync with the disk
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+public class FileSystemWatcherTest {
+
+   private Path root;
+   private FileSystem fs;
+   private FileSystemWatcher watcher;
+
+   // Watches an empty directory with a short coalescing window
+   @Before
+   public void startWatching() throws IOException {
+      root = Files.createTempDirectory("watcher").toRealPath();
+      fs = new FileSystem();
+      watcher = new FileSystemWatcher(fs, 50);
+      watcher.watch(root.toString());
+      watcher.start();
+   }
+
+   @After
+   public void stopWatching() throws IOException {
+      watcher.close();
+      try (Stream<Path> paths = Files.walk(root)) {
+         paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+   }
+
+   // Waits up to 10 seconds for the file system to reach a condition
+   private void await(BooleanSupplier condition) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (!condition.getAsBoolean()) {
+         assertTrue("timed out", System.currentTimeMillis() < deadline);
+         Thread.sleep(20);
+      }
+   }
+
+   // Test if created, modified and deleted files are applied to the file system
+   @Test
+   public void testFileEvents() throws IOException, InterruptedException {
+      Path file = Files.createFile(root.resolve("notes.txt"));
+      await(() -> fs.findFile("notes.txt", root.toString()) != null);
+
+      FileTime time = FileTime.from(Instant.parse("2021-03-25T12:00:00Z"));
+      Files.setLastModifiedTime(file, time);
+      await(() -> FileSystemCrawler.toDate(time)
+            .equals(fs.findFile("notes.txt", root.toString()).lastModifiedDate));
+      assertEquals(1, fs.findFilesByName("notes.txt").size());
+
+      Files.delete(file);
+      await(() -> fs.findFile("notes.txt", root.toString()) == null);
+   }
+
+   // Test if files in new directories are added and removed with the directory
+   @Test
+   public void testDirectoryEvents() throws IOException, InterruptedException {
+      Path dir = Files.createDirectories(root.resolve("a"));
+      Files.createFile(dir.resolve("first.txt"));
+      await(() -> fs.findFile("first.txt", dir.toString()) != null);
+
+      Files.createFile(dir.resolve("second.txt"));
+      await(() -> fs.findFile("second.txt", dir.toString()) != null);
+
+      Files.delete(dir.resolve("first.txt"));
+      Files.delete(dir.resolve("second.txt"));
+      Files.delete(dir);
+      await(() -> fs.findFilesByName("second.txt").isEmpty()
+            && fs.findFilesByName("first.txt").isEmpty());
+   }
+
+   // Test if files of nested directories created at once are added with their tree
+   @Test
+   public void testNestedDirectories() throws IOException, InterruptedException {
+      Path deep = Files.createDirectories(root.resolve("a/b/c"));
+      Files.createFile(deep.resolve("deep.txt"));
+      Files.createFile(root.resolve("a/b/middle.txt"));
+      await(() -> fs.findFile("deep.txt", deep.toString()) != null
+            && fs.findFile("middle.txt", root.resolve("a/b").toString()) != null);
+      assertEquals(2, fs.query().under(root.resolve("a").toString()).find().size());
+
+      Files.delete(deep.resolve("deep.txt"));
+      Files.delete(deep);
+      await(() -> fs.findFilesByName("deep.txt").isEmpty());
+      assertEquals(1, fs.query().under(root.resolve("a").toString()).find().size());
+   }
+
+   // Test if watching a tree removes the stored files deleted from disk and updates
+   // the stored dates changed on disk
+   @Test
+   public void testWatchSyncsStoredFiles() throws IOException {
+      Path dir = Files.createDirectories(root.resolve("manifest/sub"));
+      Path kept = Files.createFile(dir.resolve("kept.txt"));
+      FileTime time = FileTime.from(Instant.parse("2021-03-25T12:00:00Z"));
+      Files.setLastModifiedTime(kept, time);
+
+      FileSystem stored = new FileSystem();
+      stored.add("kept.txt", dir.toString(), "01/01/2000");
+      stored.add("gone.txt", dir.toString(), "01/01/2000");
+      stored.add("other.txt", "/elsewhere", "01/01/2000");
+
+      try (FileSystemWatcher manifest = new FileSystemWatcher(stored, 50)) {
+         manifest.watch(root.resolve("manifest").toString());
+      }
+      assertEquals(FileSystemCrawler.toDate(time),
+            stored.findFile("kept.txt", dir.toString()).lastModifiedDate);
+      assertEquals(null, stored.findFile("gone.txt", dir.toString()));
+      assertNotEquals(null, stored.findFile("other.txt", "/elsewhere"));
+   }
+
+   // Test if only the top-most of overflowed directories are indexed again
+   @Test
+   public void testTopMost() {
+      Set<Path> dirs = new LinkedHashSet<>(List.of(root.resolve("a/b"), root.resolve("a"),
+            root.resolve("a/b/c"), root.resolve("d/e"), root.resolve("ab")));
+      assertEquals(Set.of(root.resolve("a"), root.resolve("d/e"), root.resolve("ab")),
+            FileSystemWatcher.topMost(dirs));
+   }
+}
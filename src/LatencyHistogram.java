@@ -0,0 +1,133 @@
+/**
+ * Histogram of latencies in nanoseconds. Values are counted in logarithmic buckets,
+ * each split into 32 linear sub-buckets, so percentiles are within about 3% of the
+ * recorded values and recording never allocates
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+   private static final int SUB_BUCKET_BITS = 5;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+   private AtomicLongArray counts;
+   private AtomicLong count;
+   private AtomicLong sum;
+   private AtomicLong max;
+
+   /**
+    * Constructs an empty histogram
+    */
+   public LatencyHistogram() {
+      this.counts = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+      this.count = new AtomicLong();
+      this.sum = new AtomicLong();
+      this.max = new AtomicLong();
+   }
+
+   /**
+    * Records a value. Negative values are recorded as 0
+    * 
+    * @param nanos The latency to be recorded
+    */
+   public void record(long nanos) {
+      long value = Math.max(0, nanos);
+
+      this.counts.incrementAndGet(indexOf(value));
+      this.count.incrementAndGet();
+      this.sum.addAndGet(value);
+      this.max.accumulateAndGet(value, Math::max);
+   }
+
+   /**
+    * @return the number of recorded values
+    */
+   public long count() {
+      return this.count.get();
+   }
+
+   /**
+    * @return the largest recorded value, 0 if the histogram is empty
+    */
+   public long max() {
+      return this.max.get();
+   }
+
+   /**
+    * @return the average of the recorded values, 0 if the histogram is empty
+    */
+   public double mean() {
+      long n = this.count.get();
+      return n == 0 ? 0 : (double) this.sum.get() / n;
+   }
+
+   /**
+    * Returns the value below which the specified percentage of the recorded values fall
+    * 
+    * @param percentile The percentile, between 0 and 100
+    * @return the highest value in the bucket of the percentile, 0 if the histogram is
+    *         empty
+    */
+   public long percentile(double percentile) {
+      long n = this.count.get();
+      if (n == 0) {
+         return 0;
+      }
+
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+      long seen = 0;
+      for (int i = 0; i < this.counts.length(); i++) {
+         seen += this.counts.get(i);
+         if (seen >= rank) {
+            return Math.min(highestValueAt(i), this.max.get());
+         }
+      }
+      return this.max.get();
+   }
+
+   /**
+    * Returns a summary of the histogram
+    * 
+    * @return a String with the count, mean, percentiles and max in nanoseconds
+    */
+   public String toString() {
+      return "{count: " + this.count() + ", mean: " + Math.round(this.mean()) + ", p50: "
+            + this.percentile(50) + ", p99: " + this.percentile(99) + ", p999: "
+            + this.percentile(99.9) + ", max: " + this.max() + "}";
+   }
+
+   /**
+    * Returns the bucket of a value. Values below 32 have a bucket each, larger values
+    * share a bucket with the values that have the same 6 highest bits
+    * 
+    * @param value The non-negative value
+    * @return the index of its bucket
+    */
+   private static int indexOf(long value) {
+      if (value < SUB_BUCKETS) {
+         return (int) value;
+      }
+
+      int magnitude = 63 - Long.numberOfLeadingZeros(value);
+      int shift = magnitude - SUB_BUCKET_BITS;
+      int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+      return (shift + 1) * SUB_BUCKETS + subBucket;
+   }
+
+   /**
+    * Returns the highest value that falls in a bucket
+    * 
+    * @param index The index of the bucket
+    * @return the highest value of the bucket
+    */
+   private static long highestValueAt(int index) {
+      if (index < SUB_BUCKETS) {
+         return index;
+      }
+
+      int shift = index / SUB_BUCKETS - 1;
+      long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+      return ((subBucket + 1) << shift) - 1;
+   }
+}
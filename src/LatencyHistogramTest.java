@@ -0,0 +1,49 @@
+/**
+ * Unit testing for the latency histogram used by the file system metrics
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public class LatencyHistogramTest {
+
+   private LatencyHistogram histogram;
+
+   @Before
+   public void setUp() {
+      histogram = new LatencyHistogram();
+   }
+
+   // Test if an empty histogram reports zeros
+   @Test
+   public void testEmpty() {
+      assertEquals(0, histogram.count());
+      assertEquals(0, histogram.percentile(99));
+      assertEquals(0, histogram.max());
+   }
+
+   // Test if the percentiles are within the precision of the buckets
+   @Test
+   public void testPercentiles() {
+      for (int i = 1; i <= 10000; i++) {
+         histogram.record(i * 1000L);
+      }
+
+      assertEquals(10000, histogram.count());
+      assertEquals(10000000, histogram.max());
+      assertEquals(5000000, histogram.percentile(50), 5000000 * 0.04);
+      assertEquals(9900000, histogram.percentile(99), 9900000 * 0.04);
+      assertEquals(10000000, histogram.percentile(100));
+   }
+
+   // Test if small values are recorded exactly
+   @Test
+   public void testSmallValues() {
+      histogram.record(3);
+      histogram.record(-5);
+
+      assertEquals(0, histogram.percentile(50));
+      assertEquals(3, histogram.percentile(100));
+   }
+}
@@ -0,0 +1,31 @@
+/**
+ * Receives measurements from the hot paths of a file system and its hash maps. A
+ * listener is only called when it is set, so disabled metrics only cost a null check
+ */
+
+public interface MetricsListener {
+
+	/**
+	 * Called after a hash map searched a bucket for a key
+	 * 
+	 * @param length The number of entries compared with the key
+	 */
+	void probe(int length);
+
+	/**
+	 * Called after a hash map moved its entries to a new array of buckets
+	 * 
+	 * @param oldCapacity The number of buckets before the resize
+	 * @param newCapacity The number of buckets after the resize
+	 * @param nanos       The duration of the resize in nanoseconds
+	 */
+	void resize(int oldCapacity, int newCapacity, long nanos);
+
+	/**
+	 * Called after a file system operation finished
+	 * 
+	 * @param operation The name of the operation
+	 * @param nanos     The duration of the operation in nanoseconds
+	 */
+	void operation(String operation, long nanos);
+}
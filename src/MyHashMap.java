@@ -6,6 +6,8 @@
 import java.util.List;
 import java.util.Objects;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Stream;
 
 public class MyHashMap<K, V> implements DefaultMap<K, V> {
    public static final double DEFAULT_LOAD_FACTOR = 0.75;
@@ -18,6 +20,9 @@ public class MyHashMap<K, V> implements DefaultMap<K, V> {
    private int capacity;
    private int size;
 
+   // receives probe lengths and resizes, null when metrics are disabled
+   private volatile MetricsListener listener;
+
    // array of lists of hashMap entries
    // Use this instance variable for Separate Chaining conflict resolution
    private List<HashMapEntry<K, V>>[] buckets;
@@ -78,13 +83,16 @@ public class MyHashMap<K, V> implements DefaultMap<K, V> {
          throw new IllegalArgumentException(ILLEGAL_ARG_NULL_KEY);
       }
 
-      int keyHash = this.getKeyHash(key);
-
       if (this.containsKey(key)) {
          return false;
       }
 
-      this.buckets[keyHash].add(new HashMapEntry<K, V>(key, value));
+      // grows the buckets before the new entry goes over the load factor
+      if (this.size + 1 > this.capacity * this.loadFactor) {
+         this.rehash(Math.max(1, this.capacity * 2));
+      }
+
+      this.buckets[this.getKeyHash(key)].add(new HashMapEntry<K, V>(key, value));
       this.size++;
       return true;
    }
@@ -184,20 +192,12 @@ public class MyHashMap<K, V> implements DefaultMap<K, V> {
          throw new IllegalArgumentException(ILLEGAL_ARG_NULL_KEY);
       }
 
-      if (!this.containsKey(key)) {
+      HashMapEntry<K, V> entry = this.findEntry(key);
+      if (entry == null) {
          return null;
       }
 
-      int keyHash = this.getKeyHash(key);
-
-      // searches for the key
-      for (HashMapEntry<K, V> entry : this.buckets[keyHash]) {
-         if (entry.getKey().equals(key)) {
-            return entry.getValue();
-         }
-      }
-
-      return null;
+      return entry.getValue();
    }
 
    /**
@@ -234,20 +234,7 @@ public class MyHashMap<K, V> implements DefaultMap<K, V> {
          throw new IllegalArgumentException(ILLEGAL_ARG_NULL_KEY);
       }
 
-      if (this.isEmpty()) {
-         return false;
-      }
-
-      int keyHash = this.getKeyHash(key);
-
-      // searches for the key in the map
-      for (HashMapEntry<K, V> entry : this.buckets[keyHash]) {
-         if (entry.getKey().equals(key)) {
-            return true;
-         }
-      }
-
-      return false;
+      return this.findEntry(key) != null;
    }
 
    /**
@@ -269,6 +256,154 @@ public class MyHashMap<K, V> implements DefaultMap<K, V> {
       return keys;
    }
 
+   /**
+    * Streams the values of this map without copying them. The stream splits by bucket,
+    * so it runs well in parallel, and must be consumed before the map is modified
+    * 
+    * @return Stream with the value of each entry
+    */
+   public Stream<V> streamValues() {
+      return Arrays.stream(this.buckets).flatMap(List::stream)
+            .map(HashMapEntry::getValue);
+   }
+
+   /**
+    * Returns the bucket a key falls in for a capacity. Capacity only doubles, so for a
+    * capacity this map had, the bucket of a key is the same as now modulo that capacity
+    * 
+    * @param key      The key
+    * @param capacity The capacity, a divisor of the current one
+    * @return the index of the bucket of the key
+    */
+   public int bucketOf(K key, int capacity) {
+      return Math.abs(Objects.hashCode(key) % capacity);
+   }
+
+   /**
+    * Returns the keys that fall in a bucket for a capacity this map had, which are the
+    * keys of every current bucket with the same index modulo that capacity
+    * 
+    * @param bucket   The index of the bucket for that capacity
+    * @param capacity The capacity, a divisor of the current one
+    * @return the keys of the bucket
+    * @throws IllegalArgumentException if capacity does not divide the current capacity
+    */
+   public List<K> keysInBucket(int bucket, int capacity) throws IllegalArgumentException {
+      if (capacity <= 0 || this.capacity % capacity != 0) {
+         throw new IllegalArgumentException(ILLEGAL_ARG_CAPACITY);
+      }
+
+      List<K> keys = new ArrayList<K>();
+      for (int i = bucket; i < this.capacity; i += capacity) {
+         for (HashMapEntry<K, V> e : this.buckets[i]) {
+            keys.add(e.getKey());
+         }
+      }
+      return keys;
+   }
+
+   /**
+    * Sets the listener that receives the probe lengths and resizes of this map
+    * 
+    * @param listener The listener, null to disable metrics
+    */
+   public void setMetricsListener(MetricsListener listener) {
+      this.listener = listener;
+   }
+
+   /**
+    * Returns the number of buckets of this map
+    * 
+    * @return the current capacity
+    */
+   public int capacity() {
+      return this.capacity;
+   }
+
+   /**
+    * Returns the current ratio of entries to buckets
+    * 
+    * @return the size divided by the capacity
+    */
+   public double load() {
+      return this.capacity == 0 ? 0 : (double) this.size / this.capacity;
+   }
+
+   /**
+    * Counts the buckets by the length of their chain
+    * 
+    * @return an array where index i holds the number of buckets with i entries
+    */
+   public int[] chainLengthHistogram() {
+      int longest = 0;
+      for (int i = 0; i < this.buckets.length; i++) {
+         longest = Math.max(longest, this.buckets[i].size());
+      }
+
+      int[] histogram = new int[longest + 1];
+      for (int i = 0; i < this.buckets.length; i++) {
+         histogram[this.buckets[i].size()]++;
+      }
+      return histogram;
+   }
+
+   /**
+    * Searches the bucket of the key for its entry
+    * 
+    * @param key The key to be searched
+    * @return the entry of the key, null if the key is not in the map
+    */
+   private HashMapEntry<K, V> findEntry(K key) {
+      if (this.isEmpty()) {
+         return null;
+      }
+
+      int probes = 0;
+      HashMapEntry<K, V> found = null;
+      for (HashMapEntry<K, V> entry : this.buckets[this.getKeyHash(key)]) {
+         probes++;
+         if (entry.getKey().equals(key)) {
+            found = entry;
+            break;
+         }
+      }
+
+      MetricsListener listener = this.listener;
+      if (listener != null) {
+         listener.probe(probes);
+      }
+      return found;
+   }
+
+   /**
+    * Moves every entry to a new array of buckets with the specified capacity
+    * 
+    * @param newCapacity The new number of buckets
+    */
+   @SuppressWarnings("unchecked")
+   private void rehash(int newCapacity) {
+      MetricsListener listener = this.listener;
+      long start = listener == null ? 0 : System.nanoTime();
+      List<HashMapEntry<K, V>>[] oldBuckets = this.buckets;
+      int oldCapacity = this.capacity;
+
+      this.capacity = newCapacity;
+      this.buckets = (List<HashMapEntry<K, V>>[]) new List<?>[newCapacity];
+      for (int i = 0; i < this.buckets.length; i++) {
+         this.buckets[i] = new ArrayList<HashMapEntry<K, V>>();
+      }
+
+      for (List<HashMapEntry<K, V>> bucket : oldBuckets) {
+         for (HashMapEntry<K, V> entry : bucket) {
+            this.buckets[this.getKeyHash(entry.getKey())].add(entry);
+         }
+      }
+
+      if (listener != null) {
+         listener.resize(oldCapacity, newCapacity, System.nanoTime() - start);
+      }
+   }
+
    private static class HashMapEntry<K, V> implements DefaultMap.Entry<K, V> {
 
       K key;
@@ -98,4 +98,55 @@ public class MyHashMapTest {
       assertEquals("New Value", testMap.get(TEST_KEY));
       assertEquals("abc", testMap.get("New Key"));
    }
-}
\ No newline at end of file
+
+   // Test if the map grows its buckets past the load factor and keeps every entry
+   @Test
+   public void testRehash() {
+      MyHashMap<String, String> map = new MyHashMap<>(4, MyHashMap.DEFAULT_LOAD_FACTOR);
+      for (int i = 0; i < 100; i++) {
+         map.put(TEST_KEY + i, TEST_VAL + i);
+      }
+
+      assertEquals(100, map.size());
+      assertEquals(true, map.capacity() >= 100 / MyHashMap.DEFAULT_LOAD_FACTOR);
+      assertEquals(true, map.load() <= MyHashMap.DEFAULT_LOAD_FACTOR);
+      for (int i = 0; i < 100; i++) {
+         assertEquals(TEST_VAL + i, map.get(TEST_KEY + i));
+      }
+   }
+
+   // Test if the chain length histogram counts every bucket and every entry
+   @Test
+   public void testChainLengthHistogram() {
+      MyHashMap<String, String> map = new MyHashMap<>();
+      for (int i = 0; i < 10; i++) {
+         map.put(TEST_KEY + i, TEST_VAL + i);
+      }
+
+      int[] histogram = map.chainLengthHistogram();
+      int buckets = 0;
+      int entries = 0;
+      for (int i = 0; i < histogram.length; i++) {
+         buckets += histogram[i];
+         entries += i * histogram[i];
+      }
+      assertEquals(map.capacity(), buckets);
+      assertEquals(10, entries);
+   }
+
+   // Test if the metrics listener receives probes and resizes
+   @Test
+   public void testMetricsListener() {
+      MyHashMap<String, String> map = new MyHashMap<>(2, MyHashMap.DEFAULT_LOAD_FACTOR);
+      FileSystemMetrics metrics = new FileSystemMetrics();
+      map.setMetricsListener(metrics);
+
+      for (int i = 0; i < 10; i++) {
+         map.put(TEST_KEY + i, TEST_VAL + i);
+      }
+      map.get(TEST_KEY + 5);
+
+      assertEquals(true, metrics.resizeCount() > 0);
+      assertEquals(true, metrics.maxProbeLength() >= 1);
+   }
+}
@@ -0,0 +1,183 @@
+/**
+ * Bounded cache of query results by date. Each date has a version stamp that is
+ * increased whenever a change to the file system can alter a result for that date, and
+ * a cached result is only returned while its stamp is current. The least recently used
+ * results are evicted when the estimated size of the cache goes over its limit
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class QueryCache {
+   public static final String ILLEGAL_ARG_SIZE = "Cache size must be positive";
+
+   // estimated bytes of an entry without its result references
+   private static final long ENTRY_OVERHEAD = 128;
+
+   private long maxBytes;
+   private long bytes;
+   private long hits;
+   private long misses;
+   private long evictions;
+
+   private LinkedHashMap<String, Entry> entries;
+   private HashMap<String, Long> versions;
+
+   /**
+    * Constructs an empty cache
+    *
+    * @param maxBytes The maximum estimated size of the cached results
+    * @throws IllegalArgumentException if maxBytes is not positive
+    */
+   QueryCache(long maxBytes) throws IllegalArgumentException {
+      if (maxBytes <= 0) {
+         throw new IllegalArgumentException(ILLEGAL_ARG_SIZE);
+      }
+
+      this.maxBytes = maxBytes;
+      this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+      this.versions = new HashMap<String, Long>();
+   }
+
+   /**
+    * Returns the cached result of a query
+    *
+    * @param query The query, its kind followed by its date
+    * @param date  The date the result depends on
+    * @return the result, null if it is not cached or no longer current
+    */
+   synchronized ArrayList<FileData> get(String query, String date) {
+      Entry entry = this.entries.get(query);
+      if (entry != null && entry.version == this.version(date)) {
+         this.hits++;
+         return entry.result;
+      }
+
+      if (entry != null) {
+         this.remove(query, entry);
+      }
+      this.misses++;
+      return null;
+   }
+
+   /**
+    * Returns the current stamp of a date. Results must be computed after the stamp is
+    * read, so a change made in between makes them stale
+    *
+    * @param date The date
+    * @return the version stamp of the date
+    */
+   synchronized long version(String date) {
+      Long version = this.versions.get(date);
+      return version == null ? 0 : version;
+   }
+
+   /**
+    * Caches the result of a query and evicts the least recently used results over the
+    * size limit
+    *
+    * @param query   The query, its kind followed by its date
+    * @param date    The date the result depends on
+    * @param version The stamp of the date read before the result was computed
+    * @param result  The result of the query
+    */
+   synchronized void put(String query, String date, long version,
+         ArrayList<FileData> result) {
+      if (version != this.version(date)) {
+         return;
+      }
+
+      Entry entry = new Entry(version, result,
+            ENTRY_OVERHEAD + 2L * query.length() + 8L * result.size());
+      Entry previous = this.entries.put(query, entry);
+      if (previous != null) {
+         this.bytes -= previous.bytes;
+      }
+      this.bytes += entry.bytes;
+
+      Iterator<Map.Entry<String, Entry>> eldest = this.entries.entrySet().iterator();
+      while (this.bytes > this.maxBytes && eldest.hasNext()) {
+         Map.Entry<String, Entry> e = eldest.next();
+         this.bytes -= e.getValue().bytes;
+         eldest.remove();
+         this.evictions++;
+      }
+   }
+
+   /**
+    * Marks the cached results of a date as stale
+    *
+    * @param date The date whose results changed
+    */
+   synchronized void invalidate(String date) {
+      this.versions.merge(date, 1L, Long::sum);
+   }
+
+   /**
+    * @return the number of queries answered from the cache
+    */
+   public synchronized long hits() {
+      return this.hits;
+   }
+
+   /**
+    * @return the number of queries that had to be computed
+    */
+   public synchronized long misses() {
+      return this.misses;
+   }
+
+   /**
+    * @return the number of results evicted to stay under the size limit
+    */
+   public synchronized long evictions() {
+      return this.evictions;
+   }
+
+   /**
+    * @return the estimated size of the cached results in bytes
+    */
+   public synchronized long bytes() {
+      return this.bytes;
+   }
+
+   /**
+    * @return the number of cached results
+    */
+   public synchronized int size() {
+      return this.entries.size();
+   }
+
+   /**
+    * @return the counters and size of the cache
+    */
+   @Override
+   public synchronized String toString() {
+      return "{hits: " + this.hits + ", misses: " + this.misses + ", evictions: "
+            + this.evictions + ", size: " + this.entries.size() + ", bytes: "
+            + this.bytes + "}";
+   }
+
+   private void remove(String query, Entry entry) {
+      this.entries.remove(query);
+      this.bytes -= entry.bytes;
+   }
+
+   /**
+    * A cached result with the stamp of its date when it was computed
+    */
+   private static class Entry {
+      private long version;
+      private ArrayList<FileData> result;
+      private long bytes;
+
+      private Entry(long version, ArrayList<FileData> result, long bytes) {
+         this.version = version;
+         this.result = result;
+         this.bytes = bytes;
+      }
+   }
+}
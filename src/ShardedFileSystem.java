@@ -0,0 +1,236 @@
+/**
+ * File system split into independent FileSystem shards. A file is stored in the shard
+ * chosen by the hash of its name and directory, so operations on one file only lock
+ * one shard, and queries by name or date run on every shard in parallel
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ShardedFileSystem {
+   public static final String ILLEGAL_ARG_SHARDS = "Number of shards must be positive";
+
+   private FileSystem[] shards;
+
+   /**
+    * Constructs an empty file system with one shard per processor
+    */
+   public ShardedFileSystem() {
+      this(Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Constructs an empty file system
+    *
+    * @param shardCount The number of shards
+    * @throws IllegalArgumentException if shardCount is not positive
+    */
+   public ShardedFileSystem(int shardCount) throws IllegalArgumentException {
+      if (shardCount <= 0) {
+         throw new IllegalArgumentException(ILLEGAL_ARG_SHARDS);
+      }
+
+      this.shards = new FileSystem[shardCount];
+      for (int i = 0; i < shardCount; i++) {
+         this.shards[i] = new FileSystem();
+      }
+   }
+
+   /**
+    * Adds a file to its shard. Files cannot have the same name and directory
+    *
+    * @param fileName     The name of the file
+    * @param directory    The relative path of the file
+    * @param modifiedDate The last modified date
+    * @return true if successfully added
+    */
+   public boolean add(String fileName, String directory, String modifiedDate) {
+      // routes with the default values FileData gives to null arguments
+      FileData f = new FileData(fileName, directory, modifiedDate);
+      return this.shardOf(f.name, f.dir).add(fileName, directory, modifiedDate);
+   }
+
+   /**
+    * Finds a file with the specified name and directory in its shard
+    *
+    * @param name      The name of the file
+    * @param directory The directory of the file
+    * @return The FileData object, null if not found
+    */
+   public FileData findFile(String name, String directory) {
+      if (name == null || directory == null) {
+         return null;
+      }
+      return this.shardOf(name, directory).findFile(name, directory);
+   }
+
+   /**
+    * Removes a file by name and directory from its shard
+    *
+    * @param name      The name of the file to remove
+    * @param directory The directory of the file to remove
+    * @return true if the file was successfully removed
+    */
+   public boolean removeFile(String name, String directory) {
+      if (name == null || directory == null) {
+         return false;
+      }
+      return this.shardOf(name, directory).removeFile(name, directory);
+   }
+
+   /**
+    * Applies a batch, splitting it by shard. Each shard applies its part atomically,
+    * but readers may see the parts of different shards at different times
+    *
+    * @param batch The operations to apply
+    * @return the number of files added plus the number of files removed
+    */
+   public int apply(Batch batch) {
+      Batch[] parts = new Batch[this.shards.length];
+      for (int i = 0; i < parts.length; i++) {
+         parts[i] = new Batch();
+      }
+
+      for (Batch.Operation op : batch.operations) {
+         Batch part = parts[this.indexOf(op.name, op.dir)];
+         if (op.add) {
+            part.add(op.name, op.dir, op.date);
+         }
+         else {
+            part.remove(op.name, op.dir);
+         }
+      }
+
+      return IntStream.range(0, parts.length).parallel()
+            .map(i -> this.shards[i].apply(parts[i])).sum();
+   }
+
+   /**
+    * Finds all files with the same name in every shard
+    *
+    * @param name The name to be searched
+    * @return ArrayList with FileData object for each file
+    */
+   public ArrayList<FileData> findFilesByName(String name) {
+      return this.gather(shard -> shard.findFilesByName(name));
+   }
+
+   /**
+    * Finds all files with the same last modified date in every shard
+    *
+    * @param modifiedDate The date to be searched
+    * @return ArrayList with FileData object for each file
+    */
+   public ArrayList<FileData> findFilesByDate(String modifiedDate) {
+      return this.gather(shard -> shard.findFilesByDate(modifiedDate));
+   }
+
+   /**
+    * Returns the files with the specified date whose name is in more than one
+    * directory. A name may be stored in several shards, so the files with the date are
+    * gathered first and then the shards count each of their names
+    *
+    * @param modifiedDate The date to be searched
+    * @return A list of FileData objects with the same name and date
+    */
+   public ArrayList<FileData> findFilesInMultDir(String modifiedDate) {
+      ArrayList<FileData> candidates = this.findFilesByDate(modifiedDate);
+      LinkedHashSet<String> names = new LinkedHashSet<String>();
+      for (FileData f : candidates) {
+         names.add(f.name);
+      }
+
+      Map<String, Integer> counts = Arrays.stream(this.shards).parallel()
+            .flatMap(shard -> names.stream()
+                  .map(name -> Map.entry(name, shard.nameCardinality(name))))
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
+                  Integer::sum, HashMap::new));
+
+      ArrayList<FileData> files = new ArrayList<FileData>();
+      for (FileData f : candidates) {
+         if (counts.get(f.name) > 1) {
+            files.add(f);
+         }
+      }
+      return files;
+   }
+
+   /**
+    * Returns every file of every shard
+    *
+    * @return ArrayList with all the FileData objects
+    */
+   public ArrayList<FileData> findAllFiles() {
+      return this.gather(shard -> shard.query().find());
+   }
+
+   /**
+    * Returns all the names stored in any shard
+    *
+    * @return ArrayList with each name once
+    */
+   public ArrayList<String> findAllFilesName() {
+      return Arrays.stream(this.shards).parallel()
+            .flatMap(shard -> shard.findAllFilesName().stream()).distinct()
+            .collect(Collectors.toCollection(ArrayList::new));
+   }
+
+   /**
+    * Removes the files with a name from every shard
+    *
+    * @param name The name of the files to be removed
+    * @return true if a file was removed
+    */
+   public boolean removeByName(String name) {
+      return Arrays.stream(this.shards).parallel().map(shard -> shard.removeByName(name))
+            .reduce(false, Boolean::logicalOr);
+   }
+
+   /**
+    * @return the number of shards
+    */
+   public int shardCount() {
+      return this.shards.length;
+   }
+
+   /**
+    * Runs a query on every shard in parallel and merges the results
+    *
+    * @param query The query run on each shard
+    * @return ArrayList with the results of all the shards
+    */
+   private ArrayList<FileData> gather(Function<FileSystem, ArrayList<FileData>> query) {
+      return Arrays.stream(this.shards).parallel().map(query)
+            .flatMap(ArrayList::stream).collect(Collectors.toCollection(ArrayList::new));
+   }
+
+   /**
+    * Returns the shard of a file
+    *
+    * @param name      The name of the file
+    * @param directory The directory of the file
+    * @return the shard that stores the file
+    */
+   private FileSystem shardOf(String name, String directory) {
+      return this.shards[this.indexOf(name, directory)];
+   }
+
+   /**
+    * Hashes the name and directory of a file into a shard index
+    *
+    * @param name      The name of the file
+    * @param directory The directory of the file
+    * @return the index of the shard
+    */
+   private int indexOf(String name, String directory) {
+      int hash = name.hashCode() * 31 + directory.hashCode();
+      hash ^= hash >>> 16;
+      return Math.floorMod(hash * 0x9E3779B9, this.shards.length);
+   }
+}
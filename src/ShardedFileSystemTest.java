@@ -0,0 +1,72 @@
+/**
+ * Unit testing for the sharded file system
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+public class ShardedFileSystemTest {
+
+   private ShardedFileSystem fs;
+
+   // Adds the same files as the input file to four shards
+   @Before
+   public void initialize() {
+      fs = new ShardedFileSystem(4);
+      fs.add("mySample.txt", "/home", "02/01/2021");
+      fs.add("mySample.txt", "/root", "02/01/2021");
+      fs.add("mySample.txt", "/user", "02/06/2021");
+      fs.add("mySample.txt", "/user", "02/06/2021");
+      fs.add("notes.txt", "/user/abc", "12/03/2021");
+      fs.add("homework.pdf", "/vic/2021", "03/25/2021");
+      fs.add("project.pdf", "/projects", "03/03/2021");
+      fs.add("important.pdf", "/home", "04/02/2021");
+      fs.add("project.pdf", "/user", "09/03/2021");
+   }
+
+   // Test if point operations find the shard of the file
+   @Test
+   public void testPointOperations() {
+      assertNotEquals(null, fs.findFile("mySample.txt", "/home"));
+      assertEquals(null, fs.findFile("mySample.txt", "Not a directory"));
+      assertEquals(false, fs.add("mySample.txt", "/root", "02/01/2021"));
+      assertEquals(true, fs.removeFile("mySample.txt", "/root"));
+      assertEquals(null, fs.findFile("mySample.txt", "/root"));
+   }
+
+   // Test if queries gather the files of every shard
+   @Test
+   public void testQueries() {
+      assertEquals(3, fs.findFilesByName("mySample.txt").size());
+      assertEquals(2, fs.findFilesByDate("02/01/2021").size());
+      assertEquals(2, fs.findFilesInMultDir("02/01/2021").size());
+      assertEquals(0, fs.findFilesInMultDir("03/25/2021").size());
+      assertEquals(8, fs.findAllFiles().size());
+
+      ArrayList<String> names = fs.findAllFilesName();
+      Collections.sort(names);
+      assertArrayEquals(new String[] { "homework.pdf", "important.pdf", "mySample.txt",
+            "notes.txt", "project.pdf" }, names.toArray());
+   }
+
+   // Test if names are removed from every shard and batches reach every shard
+   @Test
+   public void testRemoveByNameAndBatch() {
+      assertEquals(true, fs.removeByName("mySample.txt"));
+      assertEquals(0, fs.findFilesByName("mySample.txt").size());
+      assertEquals(false, fs.removeByName("mySample.txt"));
+
+      Batch batch = new Batch();
+      for (int i = 0; i < 100; i++) {
+         batch.add("file" + i, "/batch", "05/05/2021");
+      }
+      batch.remove("notes.txt", "/user/abc");
+      assertEquals(101, fs.apply(batch));
+      assertEquals(100, fs.findFilesByDate("05/05/2021").size());
+      assertEquals(null, fs.findFile("notes.txt", "/user/abc"));
+   }
+}